@@ -0,0 +1,25 @@
+package study.querydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+//나이 통계. Tuple 대신 primitive 필드로 꺼내서 박싱 없이 사용한다.
+@Getter
+@ToString
+public class MemberAgeStats
+{
+    private final long count;
+    private final long sum;
+    private final int min;
+    private final int max;
+    private final double avg;
+
+    public MemberAgeStats(long count, long sum, int min, int max, double avg)
+    {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+    }
+}
@@ -0,0 +1,13 @@
+package study.querydsl.dto;
+
+/*
+ * search 결과에 무엇이 필요한지. 필요한 것만 select 하고 team 은 필요할 때만 join 한다.
+ * 건수만 필요하면 MemberJpaRepository.searchCount 를 쓸 것.
+ * */
+public enum MemberSearchShape
+{
+    //회원 컬럼 + team_id(FK) 만 읽는다. teamName 조건이 없으면 team 을 join 하지 않는다. teamName 은 null
+    MEMBER,
+    //회원 + 팀 이름까지. team 을 left join 한다.
+    MEMBER_TEAM
+}
@@ -0,0 +1,217 @@
+package study.querydsl.dto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * List<MemberTeamDto> 한 페이지를 ByteBuffer 하나에 컬럼 단위로 담는다.
+ *
+ * [count, usernameDictSize, teamNameDictSize]
+ * [memberId long * count][age int * count][teamId long * count]
+ * [username 코드 int * count][teamName 코드 int * count]
+ * [username 사전 (길이 int + UTF-8)...][teamName 사전 (길이 int + UTF-8)...]
+ *
+ * - 이름은 사전 인코딩 : 같은 팀 이름이 페이지에 수십번 나와도 한번만 저장된다.
+ * - null 은 id 는 NULL_ID, 코드는 -1 로 저장한다.
+ * - encode(rows, true) 면 direct buffer(힙 밖)에 만들어져서 캐시에 그대로 둘 수 있고,
+ *   buffer() 를 채널에 바로 써서 복사 없이 전송할 수 있다. 받는 쪽은 wrap 으로 다시 연다.
+ * - List 로 쓰면 get 할 때마다 MemberTeamDto 를 만든다. 컬럼 값만 필요하면 memberId(i), age(i) 등을 쓸 것.
+ * */
+public class MemberTeamColumnarPage extends AbstractList<MemberTeamDto>
+{
+    public static final long NULL_ID = Long.MIN_VALUE;
+    private static final int HEADER_BYTES = Integer.BYTES * 3;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int agesOffset;
+    private final int teamIdsOffset;
+    private final int usernameCodesOffset;
+    private final int teamNameCodesOffset;
+    private final int dictionaryOffset;
+
+    //사전은 문자열이 처음 필요할 때 읽는다.
+    private String[][] dictionaries;
+
+    private MemberTeamColumnarPage(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.count = buffer.getInt(0);
+        this.agesOffset = HEADER_BYTES + Long.BYTES * count;
+        this.teamIdsOffset = agesOffset + Integer.BYTES * count;
+        this.usernameCodesOffset = teamIdsOffset + Long.BYTES * count;
+        this.teamNameCodesOffset = usernameCodesOffset + Integer.BYTES * count;
+        this.dictionaryOffset = teamNameCodesOffset + Integer.BYTES * count;
+    }
+
+    public static MemberTeamColumnarPage encode(List<MemberTeamDto> rows, boolean direct){
+        Map<String, Integer> usernameDictionary = new LinkedHashMap<>();
+        Map<String, Integer> teamNameDictionary = new LinkedHashMap<>();
+        for (MemberTeamDto row : rows) {
+            code(usernameDictionary, row.getUsername());
+            code(teamNameDictionary, row.getTeamName());
+        }
+        byte[][] usernameBytes = encodeDictionary(usernameDictionary);
+        byte[][] teamNameBytes = encodeDictionary(teamNameDictionary);
+
+        int count = rows.size();
+        int size = HEADER_BYTES + (Long.BYTES * 2 + Integer.BYTES * 3) * count
+            + dictionaryBytes(usernameBytes) + dictionaryBytes(teamNameBytes);
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+
+        buffer.putInt(count).putInt(usernameBytes.length).putInt(teamNameBytes.length);
+        for (MemberTeamDto row : rows) {
+            buffer.putLong(row.getMemberId() == null ? NULL_ID : row.getMemberId());
+        }
+        for (MemberTeamDto row : rows) {
+            buffer.putInt(row.getAge());
+        }
+        for (MemberTeamDto row : rows) {
+            buffer.putLong(row.getTeamId() == null ? NULL_ID : row.getTeamId());
+        }
+        for (MemberTeamDto row : rows) {
+            buffer.putInt(code(usernameDictionary, row.getUsername()));
+        }
+        for (MemberTeamDto row : rows) {
+            buffer.putInt(code(teamNameDictionary, row.getTeamName()));
+        }
+        writeDictionary(buffer, usernameBytes);
+        writeDictionary(buffer, teamNameBytes);
+        buffer.flip();
+        return new MemberTeamColumnarPage(buffer);
+    }
+
+    /*
+     * encode 로 만든 버퍼(또는 그 내용을 받은 버퍼)를 복사 없이 다시 연다.
+     * */
+    public static MemberTeamColumnarPage wrap(ByteBuffer buffer){
+        return new MemberTeamColumnarPage(buffer.slice());
+    }
+
+    /*
+     * 전송/저장용 읽기 전용 뷰. 내용은 복사하지 않는다.
+     * */
+    public ByteBuffer buffer(){
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public int sizeInBytes(){
+        return buffer.limit();
+    }
+
+    public long memberId(int index){
+        return buffer.getLong(HEADER_BYTES + Long.BYTES * checkIndex(index));
+    }
+
+    public int age(int index){
+        return buffer.getInt(agesOffset + Integer.BYTES * checkIndex(index));
+    }
+
+    public long teamId(int index){
+        return buffer.getLong(teamIdsOffset + Long.BYTES * checkIndex(index));
+    }
+
+    public String username(int index){
+        int code = buffer.getInt(usernameCodesOffset + Integer.BYTES * checkIndex(index));
+        return code < 0 ? null : dictionaries()[0][code];
+    }
+
+    public String teamName(int index){
+        int code = buffer.getInt(teamNameCodesOffset + Integer.BYTES * checkIndex(index));
+        return code < 0 ? null : dictionaries()[1][code];
+    }
+
+    @Override
+    public MemberTeamDto get(int index)
+    {
+        long memberId = memberId(index);
+        long teamId = teamId(index);
+        return new MemberTeamDto(
+            memberId == NULL_ID ? null : memberId,
+            username(index),
+            age(index),
+            teamId == NULL_ID ? null : teamId,
+            teamName(index));
+    }
+
+    @Override
+    public int size()
+    {
+        return count;
+    }
+
+    private int checkIndex(int index)
+    {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + count);
+        }
+        return index;
+    }
+
+    private synchronized String[][] dictionaries()
+    {
+        if (dictionaries == null) {
+            String[] usernames = new String[buffer.getInt(Integer.BYTES)];
+            String[] teamNames = new String[buffer.getInt(Integer.BYTES * 2)];
+            int position = dictionaryOffset;
+            position = readDictionary(usernames, position);
+            readDictionary(teamNames, position);
+            dictionaries = new String[][]{usernames, teamNames};
+        }
+        return dictionaries;
+    }
+
+    private int readDictionary(String[] target, int position)
+    {
+        for (int i = 0; i < target.length; i++) {
+            int length = buffer.getInt(position);
+            target[i] = readString(position + Integer.BYTES, length);
+            position += Integer.BYTES + length;
+        }
+        return position;
+    }
+
+    private String readString(int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int code(Map<String, Integer> dictionary, String value)
+    {
+        if (value == null) {
+            return -1;
+        }
+        return dictionary.computeIfAbsent(value, v -> dictionary.size());
+    }
+
+    private static byte[][] encodeDictionary(Map<String, Integer> dictionary)
+    {
+        byte[][] result = new byte[dictionary.size()][];
+        dictionary.forEach((value, code) -> result[code] = value.getBytes(StandardCharsets.UTF_8));
+        return result;
+    }
+
+    private static int dictionaryBytes(byte[][] dictionary)
+    {
+        int size = 0;
+        for (byte[] bytes : dictionary) {
+            size += Integer.BYTES + bytes.length;
+        }
+        return size;
+    }
+
+    private static void writeDictionary(ByteBuffer buffer, byte[][] dictionary)
+    {
+        for (byte[] bytes : dictionary) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+}
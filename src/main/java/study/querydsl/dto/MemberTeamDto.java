@@ -22,4 +22,11 @@ public class MemberTeamDto
         this.teamId = teamId;
         this.teamName = teamName;
     }
+
+    //팀 이름 없이 회원 컬럼과 team_id 만 읽을 때 (MemberSearchShape.MEMBER)
+    @QueryProjection
+    public MemberTeamDto(Long memberId, String username, int age, Long teamId)
+    {
+        this(memberId, username, age, teamId, null);
+    }
 }
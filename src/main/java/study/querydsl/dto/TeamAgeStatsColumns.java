@@ -0,0 +1,49 @@
+package study.querydsl.dto;
+
+import java.util.Arrays;
+
+import lombok.Getter;
+
+/*
+ * 팀별 나이 통계를 컬럼(배열) 단위로 담는다.
+ * i 번째 팀의 통계는 각 배열의 i 번째 값. (teamIds 오름차순)
+ * 팀 이름은 중복될 수 있으므로 팀은 id 로 찾는다.
+ * 팀 수만큼 객체를 만드는 대신 배열 몇 개만 할당한다.
+ * getter 는 내부 배열을 그대로 돌려주므로 수정하지 말 것.
+ * */
+@Getter
+public class TeamAgeStatsColumns
+{
+    private final long[] teamIds;
+    private final String[] teamNames;
+    private final long[] counts;
+    private final long[] sums;
+    private final int[] mins;
+    private final int[] maxs;
+    private final double[] avgs;
+
+    public TeamAgeStatsColumns(int size)
+    {
+        this.teamIds = new long[size];
+        this.teamNames = new String[size];
+        this.counts = new long[size];
+        this.sums = new long[size];
+        this.mins = new int[size];
+        this.maxs = new int[size];
+        this.avgs = new double[size];
+    }
+
+    public int size(){
+        return teamNames.length;
+    }
+
+    //없으면 -1
+    public int indexOf(long teamId){
+        int index = Arrays.binarySearch(teamIds, teamId);
+        return index < 0 ? -1 : index;
+    }
+
+    public MemberAgeStats get(int index){
+        return new MemberAgeStats(counts[index], sums[index], mins[index], maxs[index], avgs[index]);
+    }
+}
@@ -0,0 +1,10 @@
+package study.querydsl.dto;
+
+public enum UsernameMatch
+{
+    EXACT,
+    //username like 'x%' : username 인덱스를 탄다.
+    PREFIX,
+    //username like '%x%' : 3글자 이상이면 메모리 n-gram 인덱스로 후보를 먼저 좁힌다.
+    CONTAINS
+}
@@ -0,0 +1,54 @@
+package study.querydsl.entity;
+
+import java.time.LocalDateTime;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/*
+ * 청크 단위 벌크 작업의 진행 위치.
+ * 청크를 처리한 트랜잭션 안에서 같이 갱신되므로, 실패해도 마지막으로 커밋된 청크 다음부터 이어서 할 수 있다.
+ * */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class BulkJobCheckpoint
+{
+    @Id
+    private String jobName;
+    //작업 종류 + where 조건의 해시. 같은 jobName 으로 다른 작업을 이어서 하지 않도록 비교한다.
+    private String fingerprint;
+    //마지막으로 처리한 member_id. 다음 청크는 이 값보다 큰 id 부터
+    private Long lastId;
+    private long processed;
+    private int chunks;
+    private boolean completed;
+    private LocalDateTime updatedAt;
+
+    public BulkJobCheckpoint(String jobName, String fingerprint)
+    {
+        this.jobName = jobName;
+        this.fingerprint = fingerprint;
+        this.lastId = 0L;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void advance(Long lastId, long affected)
+    {
+        this.lastId = lastId;
+        this.processed += affected;
+        this.chunks++;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void complete()
+    {
+        this.completed = true;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
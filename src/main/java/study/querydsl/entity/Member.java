@@ -3,11 +3,19 @@ package study.querydsl.entity;
 import javax.persistence.*;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id","username","age"})
+@Table(indexes = {
+    @Index(name = "idx_member_username", columnList = "username, member_id"),
+    @Index(name = "idx_member_age", columnList = "age, member_id")
+})
 public class Member
 {
     @Id @GeneratedValue
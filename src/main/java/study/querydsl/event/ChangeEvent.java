@@ -0,0 +1,96 @@
+package study.querydsl.event;
+
+import java.util.Set;
+
+import lombok.Getter;
+import lombok.ToString;
+import study.querydsl.entity.Member;
+
+/*
+ * 커밋된 엔티티 변경 하나.
+ * 엔티티 단위(INSERT/UPDATE/DELETE/TEAM_CHANGED)는 id 를,
+ * 벌크 연산(BULK_UPDATE/BULK_DELETE)은 영향 받았을 수 있는 id 구간 [fromId, toId] 를 가진다.
+ * OVERFLOW 는 버스가 가득 차서 이벤트를 버렸다는 뜻. 받으면 전체를 다시 읽어야 한다.
+ * properties 는 UPDATE/BULK_UPDATE 에서 바뀐 필드 이름. 비어 있으면 어떤 필드가 바뀌었는지 모른다는 뜻.
+ * naturalKey 는 Member INSERT/UPDATE 에서 커밋된 username. 모르면 null
+ * */
+@Getter
+@ToString
+public class ChangeEvent
+{
+    public enum Type
+    {
+        INSERT, UPDATE, DELETE, TEAM_CHANGED, BULK_UPDATE, BULK_DELETE, OVERFLOW
+    }
+
+    private final Type type;
+    private final Class<?> entityType;
+    private final Long id;
+    private final Long fromId;
+    private final Long toId;
+    private final Long oldTeamId;
+    private final Long newTeamId;
+    private final Set<String> properties;
+    private final String naturalKey;
+
+    private ChangeEvent(Type type, Class<?> entityType, Long id, Long fromId, Long toId, Long oldTeamId, Long newTeamId,
+                        Set<String> properties, String naturalKey)
+    {
+        this.type = type;
+        this.entityType = entityType;
+        this.id = id;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.oldTeamId = oldTeamId;
+        this.newTeamId = newTeamId;
+        this.properties = properties;
+        this.naturalKey = naturalKey;
+    }
+
+    public static ChangeEvent of(Type type, Class<?> entityType, Long id){
+        return new ChangeEvent(type, entityType, id, id, id, null, null, Set.of(), null);
+    }
+
+    public static ChangeEvent inserted(Class<?> entityType, Long id, String naturalKey){
+        return new ChangeEvent(Type.INSERT, entityType, id, id, id, null, null, Set.of(), naturalKey);
+    }
+
+    public static ChangeEvent updated(Class<?> entityType, Long id, Set<String> properties){
+        return updated(entityType, id, properties, null);
+    }
+
+    public static ChangeEvent updated(Class<?> entityType, Long id, Set<String> properties, String naturalKey){
+        return new ChangeEvent(Type.UPDATE, entityType, id, id, id, null, null, Set.copyOf(properties), naturalKey);
+    }
+
+    public static ChangeEvent teamChanged(Long memberId, Long oldTeamId, Long newTeamId){
+        return new ChangeEvent(Type.TEAM_CHANGED, Member.class, memberId, memberId, memberId, oldTeamId, newTeamId, Set.of("team"), null);
+    }
+
+    public static ChangeEvent range(Type type, Class<?> entityType, Long fromId, Long toId){
+        return new ChangeEvent(type, entityType, null, fromId, toId, null, null, Set.of(), null);
+    }
+
+    public static ChangeEvent range(Type type, Class<?> entityType, Long fromId, Long toId, Set<String> properties){
+        return new ChangeEvent(type, entityType, null, fromId, toId, null, null, Set.copyOf(properties), null);
+    }
+
+    public static ChangeEvent overflow(){
+        return new ChangeEvent(Type.OVERFLOW, null, null, null, null, null, null, Set.of(), null);
+    }
+
+    /*
+     * 이 변경으로 property 가 바뀌었을 수 있는지. insert/delete 나 바뀐 필드를 모르는 update 는 항상 true
+     * */
+    public boolean affects(String property){
+        if (type != Type.UPDATE && type != Type.BULK_UPDATE && type != Type.TEAM_CHANGED) {
+            return true;
+        }
+        return properties.isEmpty() || properties.contains(property);
+    }
+
+    public boolean covers(Long targetId){
+        return type == Type.OVERFLOW
+            || (targetId != null && fromId != null && fromId <= targetId && targetId <= toId);
+    }
+}
@@ -0,0 +1,134 @@
+package study.querydsl.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/*
+ * 프로세스 내부 변경 이벤트 버스.
+ *
+ * - publish 는 막히지 않는다. 큐(capacity)가 가득 차면 이벤트를 버리고
+ *   다음 전달 때 OVERFLOW 이벤트를 맨 앞에 붙여서 구독자가 전체를 다시 읽게 한다.
+ * - 전용 스레드 하나가 큐에 쌓인 이벤트를 최대 maxBatchSize 개씩 묶어서 구독자에게 전달한다.
+ *   구독자는 이 스레드에서 호출되므로 오래 걸리는 일은 하지 말 것.
+ *
+ * 한계 : 벌크 update/delete 이벤트(BULK_*)는 버스에 알리는 코드(MemberBulkJob, MemberAgeIncrementBuffer)에서만 나온다.
+ * 그 밖에서 queryFactory.update/delete 나 네이티브 SQL 로 바꾼 내용은 알려지지 않으므로
+ * 직접 publishAfterCommit(ChangeEvent.range(...)) 를 호출해야 한다. 다른 프로세스의 변경도 알 수 없다.
+ * */
+@Slf4j
+@Component
+public class ChangeEventBus
+{
+    private final BlockingQueue<ChangeEvent> queue;
+    private final int maxBatchSize;
+    private final List<Consumer<List<ChangeEvent>>> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean overflowed = new AtomicBoolean();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    public ChangeEventBus(@Value("${change-event.capacity:10000}") int capacity,
+                          @Value("${change-event.max-batch-size:500}") int maxBatchSize)
+    {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.dispatcher = new Thread(this::dispatch, "change-event-bus");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public boolean publish(ChangeEvent event){
+        if (queue.offer(event)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        overflowed.set(true);
+        return false;
+    }
+
+    /*
+     * 현재 트랜잭션이 커밋된 뒤에 publish 한다. 트랜잭션이 없으면 바로 publish
+     * */
+    public void publishAfterCommit(ChangeEvent event){
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+        {
+            @Override
+            public void afterCommit()
+            {
+                publish(event);
+            }
+        });
+    }
+
+    /*
+     * @return 구독 해지
+     * */
+    public Runnable subscribe(Consumer<List<ChangeEvent>> subscriber){
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    public long droppedCount(){
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException
+    {
+        running = false;
+        dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void dispatch()
+    {
+        List<ChangeEvent> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChangeEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (overflowed.getAndSet(false)) {
+                    batch.add(ChangeEvent.overflow());
+                }
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                }
+                if (!batch.isEmpty()) {
+                    deliver(List.copyOf(batch));
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliver(List<ChangeEvent> events)
+    {
+        for (Consumer<List<ChangeEvent>> subscriber : subscribers) {
+            try {
+                subscriber.accept(events);
+            } catch (RuntimeException e) {
+                log.warn("change event subscriber failed. events={}", events.size(), e);
+            }
+        }
+    }
+}
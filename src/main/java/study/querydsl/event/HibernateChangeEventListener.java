@@ -0,0 +1,163 @@
+package study.querydsl.event;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+/*
+ * Member, Team 의 insert/update/delete 가 커밋되면 ChangeEventBus 로 보낸다.
+ * Member 의 team 이 바뀌면(changTeam) TEAM_CHANGED 도 같이 보낸다.
+ *
+ * 영속성 컨텍스트를 거치는 변경만 잡힌다.
+ * 벌크 update/delete 는 MemberBulkJob 등에서 BULK_* 이벤트를 직접 보낸다.
+ * StatelessSession 은 이벤트 리스너를 타지 않는다.
+ * */
+@Component
+@RequiredArgsConstructor
+public class HibernateChangeEventListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener
+{
+    private final EntityManagerFactory emf;
+    private final ChangeEventBus changeEventBus;
+
+    @PostConstruct
+    public void register(){
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry()
+            .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister)
+    {
+        return isTracked(persister);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event)
+    {
+        if (isTracked(event.getPersister())) {
+            changeEventBus.publish(ChangeEvent.inserted(event.getPersister().getMappedClass(), (Long) event.getId(),
+                naturalKey(event.getPersister(), event.getState())));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event)
+    {
+        EntityPersister persister = event.getPersister();
+        if (!isTracked(persister)) {
+            return;
+        }
+        Long id = (Long) event.getId();
+        changeEventBus.publish(ChangeEvent.updated(persister.getMappedClass(), id, dirtyPropertyNames(event),
+            naturalKey(persister, event.getState())));
+
+        //oldState 는 merge 없이 준영속 엔티티를 update 한 경우 등에는 없다.
+        if (persister.getMappedClass() == Member.class && event.getOldState() != null) {
+            int teamIndex = propertyIndex(persister, "team");
+            Long oldTeamId = teamId(event.getOldState()[teamIndex]);
+            Long newTeamId = teamId(event.getState()[teamIndex]);
+            if (!Objects.equals(oldTeamId, newTeamId)) {
+                changeEventBus.publish(ChangeEvent.teamChanged(id, oldTeamId, newTeamId));
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event)
+    {
+        if (isTracked(event.getPersister())) {
+            changeEventBus.publish(ChangeEvent.of(ChangeEvent.Type.DELETE, event.getPersister().getMappedClass(), (Long) event.getId()));
+        }
+    }
+
+    //롤백된 변경은 알릴 필요 없음
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event)
+    {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event)
+    {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event)
+    {
+    }
+
+    private boolean isTracked(EntityPersister persister)
+    {
+        Class<?> type = persister.getMappedClass();
+        return type == Member.class || type == Team.class;
+    }
+
+    //변경감지 없이 update 된 경우(dirtyProperties 가 없음)는 빈 Set : 어떤 필드가 바뀌었는지 모름
+    private Set<String> dirtyPropertyNames(PostUpdateEvent event)
+    {
+        int[] dirty = event.getDirtyProperties();
+        if (dirty == null) {
+            return Set.of();
+        }
+        String[] names = event.getPersister().getPropertyNames();
+        Set<String> result = new HashSet<>();
+        for (int index : dirty) {
+            result.add(names[index]);
+        }
+        return result;
+    }
+
+    //Member 의 커밋된 username. Team 은 null
+    private String naturalKey(EntityPersister persister, Object[] state)
+    {
+        if (persister.getMappedClass() != Member.class || state == null) {
+            return null;
+        }
+        return (String) state[propertyIndex(persister, "username")];
+    }
+
+    private int propertyIndex(EntityPersister persister, String property)
+    {
+        String[] names = persister.getPropertyNames();
+        for (int i = 0; i < names.length; i++) {
+            if (property.equals(names[i])) {
+                return i;
+            }
+        }
+        throw new IllegalStateException(persister.getEntityName() + " has no " + property + " property");
+    }
+
+    //커밋 이후라 세션이 닫혔을 수 있으므로 프록시는 초기화하지 않고 id 만 꺼낸다.
+    private Long teamId(Object team)
+    {
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+}
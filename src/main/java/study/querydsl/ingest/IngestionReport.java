@@ -0,0 +1,26 @@
+package study.querydsl.ingest;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+public class IngestionReport
+{
+    private final List<StageStats> stages;
+    private final long inserted;
+    private final long updated;
+    private final long rejected;
+    private final long teamsCreated;
+
+    public IngestionReport(List<StageStats> stages, long inserted, long updated, long rejected, long teamsCreated)
+    {
+        this.stages = stages;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.rejected = rejected;
+        this.teamsCreated = teamsCreated;
+    }
+}
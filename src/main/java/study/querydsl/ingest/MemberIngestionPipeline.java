@@ -0,0 +1,377 @@
+package study.querydsl.ingest;
+
+import static org.springframework.util.StringUtils.hasText;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManagerFactory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+
+/*
+ * upstream 파일(한 줄에 username,age,teamName)을 읽어서 회원을 upsert 한다.
+ *
+ * parse -> resolve(팀 이름 -> 팀) -> write(batch upsert) 3단계를 각각 다른 스레드에서 돌리고
+ * 단계 사이는 크기가 정해진 큐로 연결해서 느린 단계가 앞 단계를 막도록(back-pressure) 한다.
+ *
+ * write 단계는 StatelessSession 을 사용한다.
+ * 영속성 컨텍스트/변경감지가 없어서 메모리를 쓰지 않고, hibernate.jdbc.batch_size 로 insert/update 가 묶여서 나간다.
+ * batch 마다 커밋하므로 중간에 실패하면 앞 batch 까지는 반영된다. username 기준 upsert 라 다시 돌려도 된다.
+ * 한 단계가 실패하면 cancelled 를 세워서 나머지 단계도 큐에서 기다리지 않고 끝나게 한다. (큐는 POLL_MILLIS 마다 확인)
+ *
+ * StatelessSession 은 2차 캐시와 이벤트 리스너를 거치지 않는다.
+ * 그래서 batch 가 커밋될 때마다 update 한 회원을 2차 캐시에서 지우고, insert/update 한 회원을 ChangeEventBus 로 직접 알린다.
+ *
+ * 주의 : Member.changTeam 은 team.members 컬렉션까지 건드리는데 StatelessSession 은 컬렉션을 로딩하지 않는다.
+ * 그래서 여기서는 resolve 단계에서 찾은 팀 id 로 setTeam 해서 FK 만 바꾼다. (팀을 다시 조회하지 않음)
+ * */
+@Slf4j
+@Component
+public class MemberIngestionPipeline
+{
+    private static final MemberRecord END = new MemberRecord(null, 0, null);
+    private static final long POLL_MILLIS = 100;
+    private static final Set<String> UPDATED_PROPERTIES = Set.of("age", "team");
+
+    private final SessionFactory sessionFactory;
+    private final ChangeEventBus changeEventBus;
+    private final int queueCapacity;
+    private final int batchSize;
+
+    public MemberIngestionPipeline(EntityManagerFactory emf,
+                                   ChangeEventBus changeEventBus,
+                                   @Value("${member.ingest.queue-capacity:1000}") int queueCapacity,
+                                   @Value("${member.ingest.batch-size:100}") int batchSize)
+    {
+        this.sessionFactory = emf.unwrap(SessionFactory.class);
+        this.changeEventBus = changeEventBus;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+    }
+
+    public IngestionReport ingest(Reader source){
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "member-ingest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Run run = null;
+        boolean completed = false;
+        try {
+            Run current = new Run(session);
+            run = current;
+            Future<?> parse = executor.submit(() -> {
+                current.parse(source);
+                return null;
+            });
+            Future<?> resolve = executor.submit(() -> {
+                current.resolve();
+                return null;
+            });
+            current.write();
+
+            //resolve 가 실패했으면 parse 가 큐에서 막혀있을 수 있으므로 resolve 부터 확인
+            resolve.get();
+            parse.get();
+
+            IngestionReport report = run.report();
+            report.getStages().forEach(stage -> log.info("member ingestion {}", stage));
+            completed = true;
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("member ingestion interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("member ingestion failed", e.getCause());
+        } finally {
+            if (!completed) {
+                //parse/resolve 가 큐에서 막혀있지 않도록 먼저 취소하고 source 를 닫는다.
+                if (run != null) {
+                    run.cancel();
+                }
+                closeQuietly(source);
+            }
+            executor.shutdownNow();
+            session.close();
+        }
+    }
+
+    private static void closeQuietly(Reader source)
+    {
+        try {
+            source.close();
+        } catch (IOException e) {
+            log.warn("member ingestion source close failed", e);
+        }
+    }
+
+    private class Run
+    {
+        private final StatelessSession session;
+        private final BlockingQueue<MemberRecord> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<MemberRecord> resolved = new ArrayBlockingQueue<>(queueCapacity);
+        //팀 이름 -> 팀 id. 시작할 때 한번 읽어두고 write 단계에서 새 팀을 추가한다.
+        private final Map<String, Long> teams = new ConcurrentHashMap<>();
+        //한 단계라도 실패하면 true. 다른 단계는 큐를 기다리지 않고 끝난다.
+        private volatile boolean cancelled;
+
+        private final StageStats parseStats = new StageStats("parse");
+        private final StageStats resolveStats = new StageStats("resolve");
+        private final StageStats writeStats = new StageStats("write");
+        private long inserted;
+        private long updated;
+        private long rejected;
+        private long teamsCreated;
+
+        Run(StatelessSession session)
+        {
+            this.session = session;
+            for (Object[] row : session.createQuery("select t.name, t.id from Team t where t.name is not null", Object[].class).getResultList()) {
+                teams.putIfAbsent((String) row[0], (Long) row[1]);
+            }
+        }
+
+        void cancel(){
+            cancelled = true;
+        }
+
+        void parse(Reader source) throws IOException, InterruptedException
+        {
+            parseStats.start();
+            try (BufferedReader reader = new BufferedReader(source)) {
+                String line;
+                while (!cancelled && (line = reader.readLine()) != null) {
+                    long start = System.nanoTime();
+                    MemberRecord record = parseLine(line);
+                    parseStats.addBusy(System.nanoTime() - start);
+                    if (record != null && put(parsed, record, parseStats)) {
+                        parseStats.addRecords(1);
+                    }
+                }
+                put(parsed, END, parseStats);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                cancel();
+                throw e;
+            } finally {
+                parseStats.end();
+            }
+        }
+
+        void resolve() throws InterruptedException
+        {
+            resolveStats.start();
+            try {
+                MemberRecord record;
+                while ((record = take(parsed, resolveStats)) != END) {
+                    long start = System.nanoTime();
+                    if (record.getTeamName() != null) {
+                        record.setTeamId(teams.get(record.getTeamName()));
+                    }
+                    resolveStats.addBusy(System.nanoTime() - start);
+                    if (put(resolved, record, resolveStats)) {
+                        resolveStats.addRecords(1);
+                    }
+                }
+                put(resolved, END, resolveStats);
+            } catch (InterruptedException | RuntimeException e) {
+                cancel();
+                throw e;
+            } finally {
+                resolveStats.end();
+            }
+        }
+
+        void write() throws InterruptedException
+        {
+            writeStats.start();
+            try {
+                List<MemberRecord> batch = new ArrayList<>(batchSize);
+                MemberRecord record;
+                while ((record = take(resolved, writeStats)) != END) {
+                    batch.add(record);
+                    if (batch.size() >= batchSize) {
+                        writeBatch(batch);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty() && !cancelled) {
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                cancel();
+                throw e;
+            } finally {
+                writeStats.end();
+            }
+        }
+
+        IngestionReport report(){
+            return new IngestionReport(List.of(parseStats, resolveStats, writeStats), inserted, updated, rejected, teamsCreated);
+        }
+
+        private void writeBatch(List<MemberRecord> batch)
+        {
+            long start = System.nanoTime();
+            //member_id -> username
+            Map<Long, String> insertedIds = new LinkedHashMap<>();
+            List<Long> updatedIds = new ArrayList<>();
+            Transaction tx = session.beginTransaction();
+            try {
+                Map<String, Long> memberIds = existingMemberIds(batch);
+                for (MemberRecord record : batch) {
+                    Member member = new Member(record.getUsername(), record.getAge());
+                    member.setTeam(teamOf(record));
+
+                    Long memberId = memberIds.get(record.getUsername());
+                    if (memberId == null) {
+                        memberId = (Long) session.insert(member);
+                        memberIds.put(record.getUsername(), memberId);
+                        insertedIds.put(memberId, record.getUsername());
+                        inserted++;
+                    } else {
+                        member.setId(memberId);
+                        session.update(member);
+                        updatedIds.add(memberId);
+                        updated++;
+                    }
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+            afterCommit(insertedIds, updatedIds);
+            writeStats.addRecords(batch.size());
+            writeStats.addBusy(System.nanoTime() - start);
+        }
+
+        private void afterCommit(Map<Long, String> insertedIds, List<Long> updatedIds)
+        {
+            //username 으로 찾아서 update 하므로 username 은 바뀌지 않는다.
+            for (Long memberId : updatedIds) {
+                sessionFactory.getCache().evictEntityData(Member.class, memberId);
+                changeEventBus.publish(ChangeEvent.updated(Member.class, memberId, UPDATED_PROPERTIES));
+            }
+            insertedIds.forEach((memberId, username) ->
+                changeEventBus.publish(ChangeEvent.inserted(Member.class, memberId, username)));
+        }
+
+        private Map<String, Long> existingMemberIds(List<MemberRecord> batch)
+        {
+            List<String> usernames = batch.stream()
+                .map(MemberRecord::getUsername)
+                .distinct()
+                .collect(Collectors.toList());
+
+            Map<String, Long> memberIds = new HashMap<>();
+            session.createQuery("select m.username, m.id from Member m where m.username in (:usernames)", Object[].class)
+                .setParameterList("usernames", usernames)
+                .getResultList()
+                .forEach(row -> memberIds.putIfAbsent((String) row[0], (Long) row[1]));
+            return memberIds;
+        }
+
+        private Team teamOf(MemberRecord record)
+        {
+            if (record.getTeamName() == null) {
+                return null;
+            }
+            Long teamId = record.getTeamId();
+            if (teamId == null) {
+                //resolve 단계에서 못 찾은 팀은 앞 batch 에서 만들어졌거나 새로 만들어야 하는 팀
+                teamId = teams.get(record.getTeamName());
+                if (teamId == null) {
+                    teamId = (Long) session.insert(new Team(record.getTeamName()));
+                    teams.put(record.getTeamName(), teamId);
+                    teamsCreated++;
+                }
+            }
+            //FK 만 쓰면 되므로 조회하지 않고 id 만 채운 Team 을 넘긴다.
+            Team team = new Team(record.getTeamName());
+            team.setId(teamId);
+            return team;
+        }
+
+        private MemberRecord parseLine(String line)
+        {
+            if (!hasText(line) || line.startsWith("#")) {
+                return null;
+            }
+            String[] columns = line.split(",", -1);
+            if (columns.length < 2 || !hasText(columns[0])) {
+                rejected++;
+                return null;
+            }
+            try {
+                String teamName = columns.length > 2 && hasText(columns[2]) ? columns[2].trim() : null;
+                return new MemberRecord(columns[0].trim(), Integer.parseInt(columns[1].trim()), teamName);
+            } catch (NumberFormatException e) {
+                rejected++;
+                return null;
+            }
+        }
+
+        //취소되면 넣지 않고 false
+        private boolean put(BlockingQueue<MemberRecord> queue, MemberRecord record, StageStats stats) throws InterruptedException
+        {
+            long start = System.nanoTime();
+            try {
+                while (!cancelled) {
+                    if (queue.offer(record, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                stats.addWait(System.nanoTime() - start);
+            }
+        }
+
+        //취소되면 END
+        private MemberRecord take(BlockingQueue<MemberRecord> queue, StageStats stats) throws InterruptedException
+        {
+            long start = System.nanoTime();
+            try {
+                while (!cancelled) {
+                    MemberRecord record = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (record != null) {
+                        return record;
+                    }
+                }
+                return END;
+            } finally {
+                stats.addWait(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package study.querydsl.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+//upstream 파일의 한 줄 (username,age,teamName)
+@Getter
+@ToString
+public class MemberRecord
+{
+    private final String username;
+    private final int age;
+    private final String teamName;
+    //resolve 단계에서 채운다. 아직 없는 팀이면 null
+    @Setter
+    private Long teamId;
+
+    public MemberRecord(String username, int age, String teamName)
+    {
+        this.username = username;
+        this.age = age;
+        this.teamName = teamName;
+    }
+}
@@ -0,0 +1,58 @@
+package study.querydsl.ingest;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/*
+ * 파이프라인 단계별 처리량.
+ * busyNanos : 실제 일을 한 시간, waitNanos : 앞/뒤 큐 때문에 기다린 시간(back-pressure)
+ * */
+@Getter
+public class StageStats
+{
+    private final String stage;
+    private long records;
+    private long busyNanos;
+    private long waitNanos;
+    private long startNanos;
+    private long endNanos;
+
+    public StageStats(String stage)
+    {
+        this.stage = stage;
+    }
+
+    void start(){
+        startNanos = System.nanoTime();
+    }
+
+    void end(){
+        endNanos = System.nanoTime();
+    }
+
+    void addRecords(long count){
+        records += count;
+    }
+
+    void addBusy(long nanos){
+        busyNanos += nanos;
+    }
+
+    void addWait(long nanos){
+        waitNanos += nanos;
+    }
+
+    public double recordsPerSecond(){
+        long elapsed = endNanos - startNanos;
+        return elapsed <= 0 ? 0 : records * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s records=%d rate=%.1f/s busy=%dms wait=%dms",
+            stage, records, recordsPerSecond(),
+            TimeUnit.NANOSECONDS.toMillis(busyNanos), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+}
@@ -0,0 +1,14 @@
+package study.querydsl.repository;
+
+import lombok.Data;
+
+@Data
+public class BulkJobOptions
+{
+    //한 트랜잭션에서 처리할 최대 row 수
+    private int chunkSize = 500;
+    //청크 사이에 쉬는 시간. 운영 트래픽에 양보하기 위한 throttle
+    private long pauseMillis = 0;
+    //삭제 전에 member_archive 로 복사
+    private boolean archive = false;
+}
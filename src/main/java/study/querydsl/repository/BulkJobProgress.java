@@ -0,0 +1,25 @@
+package study.querydsl.repository;
+
+import lombok.Getter;
+import lombok.ToString;
+import study.querydsl.entity.BulkJobCheckpoint;
+
+@Getter
+@ToString
+public class BulkJobProgress
+{
+    private final String jobName;
+    private final int chunks;
+    private final long processed;
+    private final Long lastId;
+    private final boolean completed;
+
+    public BulkJobProgress(BulkJobCheckpoint checkpoint)
+    {
+        this.jobName = checkpoint.getJobName();
+        this.chunks = checkpoint.getChunks();
+        this.processed = checkpoint.getProcessed();
+        this.lastId = checkpoint.getLastId();
+        this.completed = checkpoint.isCompleted();
+    }
+}
@@ -0,0 +1,216 @@
+package study.querydsl.repository;
+
+import static study.querydsl.entity.QMember.member;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+
+/*
+ * 회원 나이 증가분을 메모리에 모았다가 주기적으로 한번에 update 하는 write-behind 버퍼.
+ *
+ * - 같은 회원에 대한 증가분은 하나로 합쳐진다. (member_id 기준)
+ * - 증가분이 같은 회원끼리 묶어서 update member set age = age + ? where member_id in (...) 로 날린다.
+ * - flush 주기(flush-interval-ms)가 곧 최대 지연시간. 0 이하면 주기 flush 를 하지 않는다.
+ *
+ * 내구성 : 버퍼에 있는 증가분은 DB에 반영되기 전까지 메모리에만 있다.
+ * 정상 종료(@PreDestroy)시에는 남은 증가분을 모두 flush 하지만,
+ * 프로세스가 비정상 종료되면 마지막 flush 이후의 증가분(최대 flush 주기만큼)은 유실된다.
+ * flush 가 실패하면 증가분을 버퍼에 되돌려 놓고 다음 flush 에서 재시도한다.
+ * flush 는 항상 자기 트랜잭션(REQUIRES_NEW)으로 커밋하므로 호출한 쪽 트랜잭션이 롤백되어도 증가분은 유지된다.
+ *
+ * 메모리 : 버퍼는 member_id 로 합쳐지므로 DB 가 계속 실패해도 항목 수는 회원 수 이상 늘지 않는다.
+ * 다만 그동안 증가분은 계속 쌓이고, 프로세스가 죽으면 전부 유실된다. (flush 실패는 warn 로그로 남는다)
+ * */
+@Slf4j
+@Component
+public class MemberAgeIncrementBuffer
+{
+    private static final int IN_CLAUSE_SIZE = 1000;
+    private static final Set<String> AGE = Set.of("age");
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ChangeEventBus changeEventBus;
+    private final Stripe[] stripes;
+    private final ScheduledExecutorService scheduler;
+
+    public MemberAgeIncrementBuffer(JPAQueryFactory queryFactory,
+                                    PlatformTransactionManager transactionManager,
+                                    ChangeEventBus changeEventBus,
+                                    @Value("${member.age-buffer.stripes:16}") int stripeCount,
+                                    @Value("${member.age-buffer.flush-interval-ms:1000}") long flushIntervalMs)
+    {
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.changeEventBus = changeEventBus;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        if (flushIntervalMs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "member-age-buffer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    public void increment(Long memberId){
+        add(memberId, 1);
+    }
+
+    public void add(Long memberId, int delta){
+        if (delta == 0) {
+            return;
+        }
+        Stripe stripe = stripeOf(memberId);
+        synchronized (stripe) {
+            stripe.pending.merge(memberId, delta, Integer::sum);
+        }
+    }
+
+    public int pendingCount(){
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.pending.size();
+            }
+        }
+        return count;
+    }
+
+    /*
+     * 버퍼를 비우고 모인 증가분을 새 트랜잭션 하나로 반영한다.
+     * 호출한 쪽 트랜잭션과는 별개로 커밋된다. 호출한 쪽 트랜잭션이 수정 중인(락을 잡은) 회원은 그 트랜잭션이 끝날 때까지 기다린다.
+     * @return 반영된 회원 수
+     * */
+    public long flush(){
+        Map<Long, Integer> drained = drain();
+        if (drained.isEmpty()) {
+            return 0;
+        }
+
+        Map<Integer, List<Long>> idsByDelta = new HashMap<>();
+        drained.forEach((memberId, delta) -> {
+            if (delta != 0) {
+                idsByDelta.computeIfAbsent(delta, d -> new ArrayList<>()).add(memberId);
+            }
+        });
+
+        try {
+            Long updated = transactionTemplate.execute(status -> {
+                long count = 0;
+                for (Map.Entry<Integer, List<Long>> entry : idsByDelta.entrySet()) {
+                    //정렬해서 자르면 chunk 마다 id 구간이 좁아지고 연속 구간으로 알릴 수 있다.
+                    List<Long> ids = entry.getValue();
+                    Collections.sort(ids);
+                    for (int from = 0; from < ids.size(); from += IN_CLAUSE_SIZE) {
+                        List<Long> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_SIZE, ids.size()));
+                        count += queryFactory
+                            .update(member)
+                            .set(member.age, member.age.add(entry.getKey()))
+                            .where(member.id.in(chunk))
+                            .execute();
+                        publishRanges(chunk);
+                    }
+                }
+                return count;
+            });
+            return updated == null ? 0 : updated;
+        } catch (RuntimeException e) {
+            //실패한 증가분은 버퍼로 되돌려서 다음 flush 때 다시 시도
+            drained.forEach(this::add);
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException
+    {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flush();
+    }
+
+    private void flushQuietly()
+    {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("member age buffer flush failed. pending={}", pendingCount(), e);
+        }
+    }
+
+    /*
+     * 정렬된 id 를 연속 구간으로 묶어서 BULK_UPDATE 로 알린다.
+     * [min, max] 하나로 보내면 그 사이의 바뀌지 않은 회원까지 구독자가 버리게 된다.
+     * */
+    private void publishRanges(List<Long> sortedIds)
+    {
+        long from = sortedIds.get(0);
+        long to = from;
+        for (int i = 1; i < sortedIds.size(); i++) {
+            long id = sortedIds.get(i);
+            if (id != to + 1) {
+                changeEventBus.publishAfterCommit(ChangeEvent.range(ChangeEvent.Type.BULK_UPDATE, Member.class, from, to, AGE));
+                from = id;
+            }
+            to = id;
+        }
+        changeEventBus.publishAfterCommit(ChangeEvent.range(ChangeEvent.Type.BULK_UPDATE, Member.class, from, to, AGE));
+    }
+
+    private Map<Long, Integer> drain()
+    {
+        Map<Long, Integer> drained = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            Map<Long, Integer> pending;
+            synchronized (stripe) {
+                if (stripe.pending.isEmpty()) {
+                    continue;
+                }
+                pending = stripe.pending;
+                stripe.pending = new HashMap<>();
+            }
+            drained.putAll(pending);
+        }
+        return drained;
+    }
+
+    private Stripe stripeOf(Long memberId)
+    {
+        return stripes[Math.floorMod(memberId.hashCode(), stripes.length)];
+    }
+
+    private static class Stripe
+    {
+        private Map<Long, Integer> pending = new HashMap<>();
+    }
+}
@@ -0,0 +1,228 @@
+package study.querydsl.repository;
+
+import static study.querydsl.entity.QMember.member;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.BulkJobCheckpoint;
+import study.querydsl.entity.Member;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+
+/*
+ * delete(member)/update(member) 한방 대신 청크 단위로 나눠서 처리하는 벌크 작업.
+ *
+ * - 조건에 맞는 member_id 를 id 순으로 chunkSize 개씩 잘라서 청크마다 새 트랜잭션(REQUIRES_NEW)으로 처리한다.
+ *   락과 undo 가 청크 크기만큼만 잡히고 금방 풀린다.
+ * - 진행 위치는 BulkJobCheckpoint(jobName) 에 청크와 같은 트랜잭션으로 저장된다.
+ *   같은 jobName 으로 다시 호출하면 마지막 청크 다음부터 이어서 한다. 끝난 작업은 reset 해야 다시 돌릴 수 있다.
+ *   작업 종류(delete/보관 여부, update 의 set 컬럼)와 where 조건이 처음 실행과 다르면 IllegalStateException.
+ *   (update 의 set 값은 비교하지 않는다)
+ * - 청크마다 checkpoint row 에 비관적 락을 걸어서 같은 작업이 동시에 두번 돌지 않게 한다.
+ * - where 조건에는 member 의 컬럼만 사용할 것. (join 없음)
+ * - 청크의 id 는 락 없이 고르므로 delete 는 where 조건을 다시 걸어 row 를 잠근 뒤 그 row 만 보관/삭제하고,
+ *   update 는 where 조건을 다시 붙여서 실행한다.
+ * - 청크가 커밋되면 처리한 id 구간으로 BULK_DELETE/BULK_UPDATE 이벤트를 보낸다.
+ * */
+@Slf4j
+@Component
+public class MemberBulkJob
+{
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate chunkTransaction;
+    private final ChangeEventBus changeEventBus;
+
+    public MemberBulkJob(EntityManager em, JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager,
+                         ChangeEventBus changeEventBus)
+    {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.changeEventBus = changeEventBus;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public BulkJobProgress deleteInChunks(String jobName, Predicate where, BulkJobOptions options){
+        return deleteInChunks(jobName, where, options, progress -> {});
+    }
+
+    public BulkJobProgress deleteInChunks(String jobName, Predicate where, BulkJobOptions options,
+                                          Consumer<BulkJobProgress> listener){
+        String operation = options.isArchive() ? "delete archive" : "delete";
+        return runInChunks(jobName, fingerprint(operation, where), where, options, listener, chunk -> {
+            //청크를 고른 뒤 다른 트랜잭션이 바꿔서 조건에서 벗어난 row 는 빼고, 남은 row 는 끝날 때까지 못 바꾸게 잠근다.
+            List<Long> ids = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(member.id.in(chunk), where)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .fetch();
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            if (options.isArchive()) {
+                em.createQuery("insert into MemberArchive (id, username, age, teamId)" +
+                        " select m.id, m.username, m.age, m.team.id from Member m where m.id in (:ids)")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            }
+            long deleted = queryFactory
+                .delete(member)
+                .where(member.id.in(ids), where)
+                .execute();
+            changeEventBus.publishAfterCommit(
+                ChangeEvent.range(ChangeEvent.Type.BULK_DELETE, Member.class, chunk.get(0), chunk.get(chunk.size() - 1)));
+            return deleted;
+        });
+    }
+
+    public BulkJobProgress updateInChunks(String jobName, Predicate where, Consumer<JPAUpdateClause> setter,
+                                          BulkJobOptions options){
+        return updateInChunks(jobName, where, setter, options, progress -> {});
+    }
+
+    /*
+     * ex) updateInChunks("nonMember", member.age.lt(28), update -> update.set(member.username, "비회원"), options)
+     *
+     * 청크는 [첫 id, 마지막 id] 구간으로 update 하고 원래 where 조건을 다시 붙인다.
+     * 그 사이 다른 트랜잭션이 바꿔서 조건에서 벗어난 row 는 건드리지 않는다.
+     * */
+    public BulkJobProgress updateInChunks(String jobName, Predicate where, Consumer<JPAUpdateClause> setter,
+                                          BulkJobOptions options, Consumer<BulkJobProgress> listener){
+        //set 절을 JPQL 로 만들어서 작업 종류에 넣는다. (값은 파라미터라 빠진다)
+        JPAUpdateClause probe = queryFactory.update(member);
+        setter.accept(probe);
+        return runInChunks(jobName, fingerprint(probe.toString(), where), where, options, listener, ids -> {
+            JPAUpdateClause update = queryFactory.update(member);
+            setter.accept(update);
+            long updated = update
+                .where(member.id.between(ids.get(0), ids.get(ids.size() - 1)), where)
+                .execute();
+            changeEventBus.publishAfterCommit(
+                ChangeEvent.range(ChangeEvent.Type.BULK_UPDATE, Member.class, ids.get(0), ids.get(ids.size() - 1)));
+            return updated;
+        });
+    }
+
+    public void reset(String jobName){
+        chunkTransaction.executeWithoutResult(status -> {
+            BulkJobCheckpoint checkpoint = em.find(BulkJobCheckpoint.class, jobName);
+            if (checkpoint != null) {
+                em.remove(checkpoint);
+            }
+        });
+    }
+
+    private BulkJobProgress runInChunks(String jobName, String fingerprint, Predicate where, BulkJobOptions options,
+                                        Consumer<BulkJobProgress> listener, ToLongFunction<List<Long>> chunkAction)
+    {
+        prepareCheckpoint(jobName, fingerprint);
+
+        while (true) {
+            BulkJobProgress progress = chunkTransaction.execute(status -> {
+                BulkJobCheckpoint checkpoint = em.find(BulkJobCheckpoint.class, jobName, LockModeType.PESSIMISTIC_WRITE);
+                if (checkpoint.isCompleted()) {
+                    return new BulkJobProgress(checkpoint);
+                }
+
+                List<Long> ids = queryFactory
+                    .select(member.id)
+                    .from(member)
+                    .where(where, member.id.gt(checkpoint.getLastId()))
+                    .orderBy(member.id.asc())
+                    .limit(options.getChunkSize())
+                    .fetch();
+                if (ids.isEmpty()) {
+                    checkpoint.complete();
+                    return new BulkJobProgress(checkpoint);
+                }
+
+                long affected = chunkAction.applyAsLong(ids);
+                checkpoint.advance(ids.get(ids.size() - 1), affected);
+                return new BulkJobProgress(checkpoint);
+            });
+
+            listener.accept(progress);
+            log.info("bulk job progress {}", progress);
+            if (progress.isCompleted()) {
+                return progress;
+            }
+            pause(options.getPauseMillis());
+        }
+    }
+
+    //checkpoint 가 없으면 만들고, 있으면 같은 작업인지 확인한다.
+    private void prepareCheckpoint(String jobName, String fingerprint)
+    {
+        try {
+            chunkTransaction.executeWithoutResult(status -> {
+                BulkJobCheckpoint checkpoint = em.find(BulkJobCheckpoint.class, jobName);
+                if (checkpoint == null) {
+                    em.persist(new BulkJobCheckpoint(jobName, fingerprint));
+                } else {
+                    checkSameJob(checkpoint, fingerprint);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            //같은 작업이 동시에 처음 실행되어 다른 쪽이 먼저 만들었으면 그걸 쓴다. (진행은 checkpoint 락으로 나눠진다)
+            BulkJobCheckpoint existing = chunkTransaction.execute(status -> em.find(BulkJobCheckpoint.class, jobName));
+            if (existing == null) {
+                throw e;
+            }
+            checkSameJob(existing, fingerprint);
+        }
+    }
+
+    private static void checkSameJob(BulkJobCheckpoint checkpoint, String fingerprint)
+    {
+        if (!fingerprint.equals(checkpoint.getFingerprint())) {
+            throw new IllegalStateException("bulk job " + checkpoint.getJobName()
+                + " was started with a different operation or condition. reset it or use another job name");
+        }
+    }
+
+    static String fingerprint(String operation, Predicate where)
+    {
+        String text = operation + "\n" + where;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void pause(long millis)
+    {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("bulk job interrupted", e);
+        }
+    }
+}
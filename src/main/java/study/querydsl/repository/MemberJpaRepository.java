@@ -4,22 +4,39 @@ import static org.springframework.util.ObjectUtils.isEmpty;
 import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.QueryAdmissionControl.QueryClass.LOOKUP;
+import static study.querydsl.repository.QueryAdmissionControl.QueryClass.SEARCH;
+import static study.querydsl.repository.QueryAdmissionControl.TIMEOUT_HINT;
 
 import java.util.List;
 import java.util.Optional;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
 
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberAgeStats;
 import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberSearchShape;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.TeamAgeStatsColumns;
+import study.querydsl.dto.UsernameMatch;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
@@ -30,42 +47,134 @@ public class MemberJpaRepository
 {
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberUsernameIndex usernameIndex;
+    private final QueryAdmissionControl admission;
+    private final MemberUsernameCache usernameCache;
+
+    //조건 없는 search 는 회원 수가 이보다 많으면 거절
+    @Value("${query.admission.unfiltered-row-limit:10000}")
+    private long unfilteredRowLimit;
+
+    //contains 검색 후보가 이보다 많으면 in 절 대신 like 만 사용
+    private static final int MAX_USERNAME_CANDIDATES = 1000;
 
     public void save(Member member){
         em.persist(member);
     }
 
+    /*
+     * em.find 는 query timeout 힌트를 쓰지 않는다.
+     * 그래서 영속성 컨텍스트나 2차 캐시에 있어서 SQL 이 나가지 않을 때만 em.find 를 쓰고,
+     * DB 에서 읽어야 하면 타임아웃을 건 쿼리로 읽는다.
+     * 쿼리는 em.find 처럼 호출한 쪽의 영속성 컨텍스트를 flush 하지 않도록 FlushModeType.COMMIT 으로 실행한다.
+     * */
     public Optional<Member> findById(Long id){
-        Member findMember = em.find(Member.class, id);
+        Member findMember = admission.execute(LOOKUP, () -> {
+            if (loadedWithoutSql(id)) {
+                return em.find(Member.class, id);
+            }
+            return queryFactory
+                .selectFrom(member)
+                .where(member.id.eq(id))
+                .setFlushMode(FlushModeType.COMMIT)
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(LOOKUP))
+                .fetchOne();
+        });
         return Optional.ofNullable(findMember);
     }
 
+    //영속성 컨텍스트는 트랜잭션에 묶인 EntityManager 가 있을 때만 본다. (없으면 shared EntityManager 의 unwrap 이 실패한다)
+    private boolean loadedWithoutSql(Long id)
+    {
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        if (emf.getCache().contains(Member.class, id)) {
+            return true;
+        }
+        if (!TransactionSynchronizationManager.hasResource(emf)) {
+            return false;
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        return session.getPersistenceContext().containsEntity(session.generateEntityKey(id, persister));
+    }
+
+    //전체 조회는 전체 스캔이므로 SEARCH 로 제한한다.
     public List<Member> findAll()
     {
-        return em.createQuery("select m from Member m", Member.class).getResultList();
+        return admission.execute(SEARCH, () -> em.createQuery("select m from Member m", Member.class)
+            .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+            .getResultList());
     }
     public List<Member> findAll_Querydsl()
     {
-        return queryFactory.selectFrom(member)
-            .fetch();
+        return admission.execute(SEARCH, () -> queryFactory.selectFrom(member)
+            .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+            .fetch());
     }
     public List<Member> findByUsername(String username){
-        return em.createQuery("select m from Member m where m.username = :username",Member.class)
-            .setParameter("username", username)
-            .getResultList();
+        return admission.execute(LOOKUP, () ->
+            em.createQuery("select m from Member m where m.username = :username",Member.class)
+                .setParameter("username", username)
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(LOOKUP))
+                .getResultList());
     }
     public List<Member> findByUsername_Querydsl(String username){
-        return queryFactory
-            .selectFrom(member)
-            .where(member.username.eq(username))
-            .fetch();
+        return admission.execute(LOOKUP, () ->
+            queryFactory
+                .selectFrom(member)
+                .where(member.username.eq(username))
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(LOOKUP))
+                .fetch());
+    }
+
+    /*
+     * username 을 자연키로 보고 회원 한명을 찾는다.
+     * username -> id 는 near-cache 에서, 엔티티는 findById 로 2차 캐시에서 찾기 때문에
+     * 한번 찾은 username 은 다음 요청부터 SQL 없이 조회된다.
+     * 캐시된 id 로 찾은 회원의 username 이 다르면(이름 변경) 캐시를 버리고 다시 조회한다.
+     * 같은 username 이 여러명이면 IncorrectResultSizeDataAccessException
+     * 캐시 적중도 같다. 캐시에는 조회로 유일하다고 확인된 username 만 들어가고,
+     * 같은 username 을 insert(또는 그 username 으로 update)하는 커밋의 이벤트가 오면 캐시에서 빠지므로
+     * 이벤트가 전달되는 잠깐을 빼면 중복 username 은 캐시 여부와 상관없이 예외가 난다.
+     *
+     * 한계 : JPQL 벌크 update/delete 가 실행되면 Hibernate 가 Member 2차 캐시 영역을 통째로 비운다.
+     * (MemberAgeIncrementBuffer 의 flush, MemberBulkJob 의 chunk 마다)
+     * near-cache 는 username 이 바뀌지 않은 벌크 update 에서는 유지되므로, 그 뒤 첫 조회는 username 검색이 아니라
+     * PK 조회 SQL 한번이 나가고 다음부터 다시 SQL 없이 조회된다.
+     * */
+    public Optional<Member> findOneByUsername(String username){
+        Long cachedId = usernameCache.get(username);
+        if (cachedId != null) {
+            Optional<Member> cached = findById(cachedId);
+            if (cached.isPresent() && username.equals(cached.get().getUsername())) {
+                return cached;
+            }
+            usernameCache.evict(username);
+        }
+
+        Long uniqueId = null;
+        usernameCache.beginLookup(username);
+        try {
+            List<Member> result = findByUsername_Querydsl(username);
+            if (result.size() > 1) {
+                throw new IncorrectResultSizeDataAccessException(1, result.size());
+            }
+            if (result.isEmpty()) {
+                return Optional.empty();
+            }
+            Member findMember = result.get(0);
+            uniqueId = findMember.getId();
+            return Optional.of(findMember);
+        } finally {
+            usernameCache.endLookup(username, uniqueId);
+        }
     }
 
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition){
 
         BooleanBuilder builder = new BooleanBuilder();
         if (hasText(condition.getUsername())) {
-            builder.and(member.username.eq(condition.getUsername()));
+            builder.and(usernameMatches(condition.getUsername(), condition.getUsernameMatch()));
         }
         if (hasText(condition.getTeamName())) {
             builder.and(team.name.eq(condition.getTeamName()));
@@ -76,43 +185,239 @@ public class MemberJpaRepository
         if (condition.getAgeLoe() != null) {
             builder.and(member.age.loe(condition.getAgeLoe()));
         }
-        return queryFactory
-            .select(new QMemberTeamDto(
-                member.id.as("memberId"),
-                member.username,
-                member.age,
-                team.id.as("teamId"),
-                team.name.as("teamName")
-            ))
-            .from(member)
-            .leftJoin(member.team, team)
-            .where(builder)
-            .fetch();
+        return admission.execute(SEARCH, () -> {
+            checkUnfilteredCost(condition);
+            return queryFactory
+                .select(new QMemberTeamDto(
+                    member.id.as("memberId"),
+                    member.username,
+                    member.age,
+                    team.id.as("teamId"),
+                    team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(builder)
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+                .fetch();
+        });
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition){
-        return queryFactory
-            .select(new QMemberTeamDto(
-                member.id.as("memberId"),
-                member.username,
-                member.age,
-                team.id.as("teamId"),
-                team.name.as("teamName")
-            ))
+        return search(condition, MemberSearchShape.MEMBER_TEAM);
+    }
+
+    /*
+     * shape 에 맞춰 select 컬럼과 join 을 정한다.
+     * MEMBER 는 member.team.id 를 member.team_id 컬럼에서 바로 읽으므로 teamName 조건이 없으면 team 을 join 하지 않는다.
+     * */
+    public List<MemberTeamDto> search(MemberSearchCondition condition, MemberSearchShape shape){
+        return admission.execute(SEARCH, () -> {
+            checkUnfilteredCost(condition);
+            return searchQuery(condition, shape)
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+                .fetch();
+        });
+    }
+
+    /*
+     * 정렬은 MemberSortProperty 에 등록된 컬럼 하나만 가능하고 항상 같은 방향의 member.id 로 마무리된다.
+     * ex) PageRequest.of(0, 20, Sort.by(Sort.Order.desc("age")))  -> order by age desc, member_id desc
+     * */
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Pageable pageable){
+        return search(condition, MemberSearchShape.MEMBER_TEAM, pageable);
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, MemberSearchShape shape, Pageable pageable){
+        //Pageable.unpaged() 는 offset 이 없으므로 페이지 없는 검색(비용 검사 포함)으로 돌린다.
+        if (pageable.isUnpaged()) {
+            return search(condition, shape);
+        }
+        //페이지 크기로 결과가 제한되므로 비용 검사는 하지 않는다.
+        return admission.execute(SEARCH, () ->
+            searchQuery(condition, shape)
+                .orderBy(MemberSortProperty.orderBy(pageable.getSort()))
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+                .fetch());
+    }
+
+    /*
+     * 조건에 맞는 회원 수. teamName 조건이 있을 때만 team 을 join 한다.
+     * */
+    public long searchCount(MemberSearchCondition condition){
+        return admission.execute(SEARCH, () -> {
+            JPAQuery<Long> query = queryFactory
+                .select(member.count())
+                .from(member);
+            if (hasText(condition.getTeamName())) {
+                query.join(member.team, team);
+            }
+            Long count = query
+                .where(searchConditions(condition))
+                .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+                .fetchOne();
+            return count == null ? 0 : count;
+        });
+    }
+
+    //집계는 결과가 작아도 전체 회원을 읽으므로 SEARCH 로 제한한다.
+    public MemberAgeStats ageStats(){
+        Tuple tuple = admission.execute(SEARCH, () -> queryFactory
+            .select(member.count(), member.age.sum(), member.age.min(), member.age.max(), member.age.avg())
+            .from(member)
+            .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+            .fetchOne());
+        return new MemberAgeStats(
+            longValue(tuple, 0),
+            longValue(tuple, 1),
+            (int) longValue(tuple, 2),
+            (int) longValue(tuple, 3),
+            doubleValue(tuple, 4));
+    }
+
+    public TeamAgeStatsColumns ageStatsByTeam(){
+        List<Tuple> result = admission.execute(SEARCH, () -> queryFactory
+            .select(team.id, team.name, member.count(), member.age.sum(), member.age.min(), member.age.max(), member.age.avg())
+            .from(member)
+            .join(member.team, team)
+            .groupBy(team.id, team.name)
+            .orderBy(team.id.asc())
+            .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+            .fetch());
+
+        TeamAgeStatsColumns columns = new TeamAgeStatsColumns(result.size());
+        for (int i = 0; i < result.size(); i++) {
+            Tuple tuple = result.get(i);
+            columns.getTeamIds()[i] = longValue(tuple, 0);
+            columns.getTeamNames()[i] = tuple.get(1, String.class);
+            columns.getCounts()[i] = longValue(tuple, 2);
+            columns.getSums()[i] = longValue(tuple, 3);
+            columns.getMins()[i] = (int) longValue(tuple, 4);
+            columns.getMaxs()[i] = (int) longValue(tuple, 5);
+            columns.getAvgs()[i] = doubleValue(tuple, 6);
+        }
+        return columns;
+    }
+
+    /*
+     * 조건이 하나도 없으면 전체 회원 + 팀을 다 읽게 되므로 회원 수가 한도를 넘으면 거절한다.
+     * count(*) 대신 한도 위치의 row 하나만 읽어서 한도를 넘는지만 확인한다.
+     * */
+    private void checkUnfilteredCost(MemberSearchCondition condition)
+    {
+        boolean unfiltered = !usesIndexedUsername(condition)
+            && !hasText(condition.getTeamName())
+            && condition.getAgeGoe() == null
+            && condition.getAgeLoe() == null;
+        if (unfiltered) {
+            checkRowLimit();
+        }
+    }
+
+    //contains 는 trigram 인덱스를 쓸 수 없으면 like '%x%' 전체 스캔이므로 조건으로 치지 않는다.
+    private boolean usesIndexedUsername(MemberSearchCondition condition)
+    {
+        if (!hasText(condition.getUsername())) {
+            return false;
+        }
+        return condition.getUsernameMatch() != UsernameMatch.CONTAINS || usernameIndex.usable(condition.getUsername());
+    }
+
+    private void checkRowLimit()
+    {
+        Integer overLimit = queryFactory
+            .selectOne()
             .from(member)
-            .leftJoin(member.team, team)
-            .where(
-                usernameEq(condition.getUsername()),
-                teamNameEq(condition.getTeamName()),
-                ageGoe(condition.getAgeGoe()),
-                ageLoe(condition.getAgeLoe())
-            )
-            .fetch();
+            .offset(unfilteredRowLimit)
+            .setHint(TIMEOUT_HINT, admission.queryTimeoutMillis(SEARCH))
+            .fetchFirst();
+        if (overLimit != null) {
+            throw new QueryRejectedException("unfiltered search over " + unfilteredRowLimit + " members");
+        }
+    }
+
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition, MemberSearchShape shape)
+    {
+        JPAQuery<MemberTeamDto> query;
+        if (shape == MemberSearchShape.MEMBER) {
+            query = queryFactory
+                .select(new QMemberTeamDto(
+                    member.id.as("memberId"),
+                    member.username,
+                    member.age,
+                    member.team.id.as("teamId")
+                ))
+                .from(member);
+            //team.name = ? 이면 팀 없는 회원은 어차피 빠지므로 inner join
+            if (hasText(condition.getTeamName())) {
+                query.join(member.team, team);
+            }
+        } else {
+            query = queryFactory
+                .select(new QMemberTeamDto(
+                    member.id.as("memberId"),
+                    member.username,
+                    member.age,
+                    team.id.as("teamId"),
+                    team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team);
+        }
+        return query.where(searchConditions(condition));
     }
 
-    private BooleanExpression usernameEq(String username)
+    private Predicate[] searchConditions(MemberSearchCondition condition)
     {
-        return hasText(username) ? member.username.eq(username) : null;
+        return new Predicate[]{
+            usernameMatches(condition.getUsername(), condition.getUsernameMatch()),
+            teamNameEq(condition.getTeamName()),
+            ageGoe(condition.getAgeGoe()),
+            ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    //집계 결과는 DB/JPA 구현에 따라 Integer, Long, Double 로 섞여서 오기 때문에 Number 로 받는다.
+    private long longValue(Tuple tuple, int index)
+    {
+        Number value = tuple == null ? null : tuple.get(index, Number.class);
+        return value == null ? 0 : value.longValue();
+    }
+
+    private double doubleValue(Tuple tuple, int index)
+    {
+        Number value = tuple == null ? null : tuple.get(index, Number.class);
+        return value == null ? 0 : value.doubleValue();
+    }
+
+    private BooleanExpression usernameMatches(String username, UsernameMatch match)
+    {
+        if (!hasText(username)) {
+            return null;
+        }
+        if (match == UsernameMatch.PREFIX) {
+            return member.username.startsWith(username);
+        }
+        if (match == UsernameMatch.CONTAINS) {
+            return usernameContains(username);
+        }
+        return member.username.eq(username);
+    }
+
+    private BooleanExpression usernameContains(String username)
+    {
+        MemberUsernameIndex.Candidates candidates = usernameIndex.candidates(username);
+        if (candidates == null || candidates.getIds().size() > MAX_USERNAME_CANDIDATES) {
+            return member.username.contains(username);
+        }
+        //인덱스를 읽은 뒤 insert 된 회원은 인덱스에 아직 없을 수 있으므로 항상 같이 본다.
+        BooleanExpression unindexed = member.id.gt(candidates.getLoadedMaxId());
+        BooleanExpression scope = candidates.getIds().isEmpty()
+            ? unindexed
+            : member.id.in(candidates.getIds()).or(unindexed);
+        return scope.and(member.username.contains(username));
     }
 
     private BooleanExpression teamNameEq(String teamName)
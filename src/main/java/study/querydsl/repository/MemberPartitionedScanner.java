@@ -0,0 +1,173 @@
+package study.querydsl.repository;
+
+import static study.querydsl.entity.QMember.member;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+
+/*
+ * member 테이블 전체를 member_id 구간으로 나눠서 병렬로 읽는다.
+ *
+ * - 구간마다 새 EntityManager 를 열고 닫기 때문에 반환되는 Member 는 준영속 상태.
+ *   (지연로딩인 team 은 초기화되지 않으므로 team 이 필요하면 teamId 로 따로 조회)
+ * - 동시에 메모리에 올라가는 구간은 parallelism * 2 개로 제한한다.
+ * - ordered=true 면 member_id 순서 보장, false 면 먼저 끝난 구간부터 전달. (구간 내부는 항상 id 순)
+ * */
+@Component
+@RequiredArgsConstructor
+public class MemberPartitionedScanner
+{
+    private final EntityManagerFactory emf;
+
+    public void scan(MemberScanOptions options, Consumer<Member> consumer){
+        try (Stream<Member> stream = stream(options)) {
+            stream.forEach(consumer);
+        }
+    }
+
+    /*
+     * 반환된 Stream 은 반드시 close 해야 한다. (내부 ForkJoinPool 정리)
+     * */
+    public Stream<Member> stream(MemberScanOptions options){
+        //chunkSize 가 0 이하면 구간이 앞으로 가지 않아서 빈 조회가 끝없이 반복된다.
+        if (options.getParallelism() <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + options.getParallelism());
+        }
+        if (options.getChunkSize() <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + options.getChunkSize());
+        }
+        long[] bounds = idBounds();
+        if (bounds == null) {
+            return Stream.empty();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+        ChunkIterator chunks = new ChunkIterator(pool, options, bounds[0], bounds[1]);
+        int characteristics = options.isOrdered() ? Spliterator.ORDERED | Spliterator.NONNULL : Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, characteristics), false)
+            .flatMap(List::stream)
+            .onClose(pool::shutdownNow);
+    }
+
+    private long[] idBounds()
+    {
+        EntityManager em = emf.createEntityManager();
+        try {
+            Tuple tuple = new JPAQueryFactory(em)
+                .select(member.id.min(), member.id.max())
+                .from(member)
+                .fetchOne();
+            if (tuple == null || tuple.get(member.id.min()) == null) {
+                return null;
+            }
+            return new long[]{tuple.get(member.id.min()), tuple.get(member.id.max())};
+        } finally {
+            em.close();
+        }
+    }
+
+    private List<Member> fetchRange(long fromId, long toId)
+    {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return new JPAQueryFactory(em)
+                .selectFrom(member)
+                .where(member.id.between(fromId, toId))
+                .orderBy(member.id.asc())
+                .setHint("org.hibernate.readOnly", true)
+                .fetch();
+        } finally {
+            em.close();
+        }
+    }
+
+    private class ChunkIterator implements Iterator<List<Member>>
+    {
+        private final ForkJoinPool pool;
+        private final boolean ordered;
+        private final int window;
+        private final long chunkSize;
+        private final long maxId;
+        private long nextFromId;
+
+        private final Deque<Future<List<Member>>> inFlight = new ArrayDeque<>();
+        private final CompletionService<List<Member>> completionService;
+        private int running;
+
+        ChunkIterator(ForkJoinPool pool, MemberScanOptions options, long minId, long maxId)
+        {
+            this.pool = pool;
+            this.ordered = options.isOrdered();
+            this.window = options.getParallelism() * 2;
+            this.chunkSize = options.getChunkSize();
+            this.maxId = maxId;
+            this.nextFromId = minId;
+            this.completionService = new ExecutorCompletionService<>(pool);
+            fill();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return running > 0;
+        }
+
+        @Override
+        public List<Member> next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Future<List<Member>> done = ordered ? inFlight.poll() : completionService.take();
+                List<Member> result = done.get();
+                running--;
+                fill();
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("member scan interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("member scan failed", e.getCause());
+            }
+        }
+
+        private void fill()
+        {
+            while (running < window && nextFromId <= maxId) {
+                long fromId = nextFromId;
+                long toId = Math.min(maxId, fromId + chunkSize - 1);
+                nextFromId = toId + 1;
+
+                //ordered 면 제출 순서대로 꺼내고, 아니면 완료된 순서대로 꺼낸다.
+                if (ordered) {
+                    inFlight.add(pool.submit(() -> fetchRange(fromId, toId)));
+                } else {
+                    completionService.submit(() -> fetchRange(fromId, toId));
+                }
+                running++;
+            }
+        }
+    }
+}
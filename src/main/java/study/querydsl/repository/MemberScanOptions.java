@@ -0,0 +1,14 @@
+package study.querydsl.repository;
+
+import lombok.Data;
+
+@Data
+public class MemberScanOptions
+{
+    //동시에 조회할 범위 수 (= 사용할 EntityManager, 커넥션 수)
+    private int parallelism = 4;
+    //한 범위가 담당하는 member_id 구간 크기
+    private long chunkSize = 1000;
+    //true 면 member_id 순서대로, false 면 먼저 끝난 범위부터 전달
+    private boolean ordered = true;
+}
@@ -0,0 +1,89 @@
+package study.querydsl.repository;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import org.springframework.data.domain.Sort;
+
+/*
+ * 검색 결과를 정렬할 수 있는 컬럼 목록. (Sort 의 property 이름 -> Querydsl 컬럼)
+ * 여기 없는 property 나 인덱스가 없는 컬럼으로는 정렬하지 않는다.
+ * 정렬 뒤에는 항상 member.id 를 같은 방향으로 붙여서 같은 값끼리도 순서가 고정되게 한다.
+ * 인덱스는 Member 의 (컬럼, member_id) 복합 인덱스라서 (컬럼 desc, member_id desc) 도 인덱스를 거꾸로 읽으면 된다.
+ * 그래서 정렬 컬럼은 하나만 받는다. (뒤에 같은 방향의 memberId 는 허용)
+ * age desc, username asc 처럼 여러 컬럼을 섞으면 맞는 인덱스가 없으므로 거절한다.
+ * null 위치도 인덱스 순서와 같아야 한다. H2 는 null 을 가장 작은 값으로 보므로
+ * asc 는 nulls first, desc 는 nulls last 만 받고 반대로 지정하면 거절한다.
+ * */
+public enum MemberSortProperty
+{
+    MEMBER_ID("memberId", member.id, true),
+    USERNAME("username", member.username, true),
+    AGE("age", member.age, true),
+    //team.name 인덱스로는 join 결과 정렬을 할 수 없어서 막아둔다.
+    TEAM_NAME("teamName", team.name, false);
+
+    private final String property;
+    private final ComparableExpressionBase<?> expression;
+    private final boolean indexed;
+
+    MemberSortProperty(String property, ComparableExpressionBase<?> expression, boolean indexed)
+    {
+        this.property = property;
+        this.expression = expression;
+        this.indexed = indexed;
+    }
+
+    public static OrderSpecifier<?>[] orderBy(Sort sort){
+        List<Sort.Order> orders = sort.toList();
+        if (orders.isEmpty()) {
+            return new OrderSpecifier<?>[]{member.id.asc()};
+        }
+
+        Sort.Order first = orders.get(0);
+        MemberSortProperty sortProperty = of(first.getProperty());
+        boolean idOnly = sortProperty == MEMBER_ID && orders.size() == 1;
+        boolean trailingId = orders.size() == 2
+            && of(orders.get(1).getProperty()) == MEMBER_ID
+            && orders.get(1).getDirection() == first.getDirection();
+        if (orders.size() > 1 && (sortProperty == MEMBER_ID || !trailingId)) {
+            throw new IllegalArgumentException("no index supports sorting by " + sort);
+        }
+
+        List<OrderSpecifier<?>> result = new ArrayList<>();
+        result.add(sortProperty.toOrderSpecifier(first));
+        if (!idOnly) {
+            result.add(first.isAscending() ? member.id.asc() : member.id.desc());
+        }
+        return result.toArray(new OrderSpecifier<?>[0]);
+    }
+
+    private static MemberSortProperty of(String property)
+    {
+        for (MemberSortProperty sortProperty : values()) {
+            if (sortProperty.property.equals(property)) {
+                if (!sortProperty.indexed) {
+                    throw new IllegalArgumentException("no index supports sorting by " + property);
+                }
+                return sortProperty;
+            }
+        }
+        throw new IllegalArgumentException("unsupported sort property: " + property);
+    }
+
+    private OrderSpecifier<?> toOrderSpecifier(Sort.Order order)
+    {
+        //인덱스 순서 그대로 읽을 때 null 이 나오는 위치
+        Sort.NullHandling indexOrder = order.isAscending() ? Sort.NullHandling.NULLS_FIRST : Sort.NullHandling.NULLS_LAST;
+        if (order.getNullHandling() != Sort.NullHandling.NATIVE && order.getNullHandling() != indexOrder) {
+            throw new IllegalArgumentException("no index supports sorting by " + order);
+        }
+        //DB 기본 순서와 같으므로 nulls first/last 를 따로 붙이지 않는다.
+        return order.isAscending() ? expression.asc() : expression.desc();
+    }
+}
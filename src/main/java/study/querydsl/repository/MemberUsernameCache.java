@@ -0,0 +1,164 @@
+package study.querydsl.repository;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+
+/*
+ * username -> member_id near-cache. (크기 제한 LRU)
+ *
+ * id 만 들고 있고 엔티티는 em.find 로 영속성 컨텍스트/2차 캐시에서 찾는다.
+ * ChangeEventBus 로 Member 의 update/delete, 벌크 update/delete 구간을 받아서 해당 id 를 지운다.
+ * username 이 바뀌지 않은 update(나이 증가 등)는 무시한다.
+ * 이벤트는 비동기라 잠깐 늦을 수 있으므로 조회하는 쪽에서 찾은 엔티티의 username 을 다시 확인해야 한다.
+ *
+ * 유일하다고 확인된 username 만 둔다.
+ * Member INSERT/UPDATE 이벤트의 username(naturalKey)이 캐시에 있으면 중복이 생겼을 수 있으므로 지운다.
+ * 조회 중(beginLookup ~ endLookup)에 그런 이벤트가 오면 그 조회 결과는 캐시하지 않는다.
+ * */
+@Component
+public class MemberUsernameCache
+{
+    private final int maxSize;
+    private final LinkedHashMap<String, Long> ids;
+    private final Map<Long, String> usernames = new HashMap<>();
+    //조회 중인 username -> 조회 수, 조회 중에 무효화된 username
+    private final Map<String, Integer> lookups = new HashMap<>();
+    private final Set<String> staleLookups = new HashSet<>();
+
+    public MemberUsernameCache(@Value("${member.username-cache.max-size:10000}") int maxSize, ChangeEventBus changeEventBus)
+    {
+        this.maxSize = maxSize;
+        this.ids = new LinkedHashMap<>(16, 0.75f, true);
+        changeEventBus.subscribe(this::onChanges);
+    }
+
+    public synchronized Long get(String username){
+        return ids.get(username);
+    }
+
+    public synchronized void put(String username, Long memberId){
+        String previous = usernames.put(memberId, username);
+        if (previous != null && !previous.equals(username)) {
+            ids.remove(previous);
+        }
+        ids.put(username, memberId);
+        if (ids.size() > maxSize) {
+            Iterator<Map.Entry<String, Long>> eldest = ids.entrySet().iterator();
+            usernames.remove(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /*
+     * DB 조회 전에 부른다. endLookup 까지 들어온 같은 username 의 무효화를 기억한다.
+     * */
+    public synchronized void beginLookup(String username){
+        lookups.merge(username, 1, Integer::sum);
+    }
+
+    /*
+     * 조회가 끝나면 항상 부른다. memberId 는 유일하게 찾은 회원의 id, 없거나 중복이면 null
+     * 조회 중에 무효화됐으면 캐시하지 않는다.
+     * */
+    public synchronized void endLookup(String username, Long memberId){
+        if (memberId != null && !staleLookups.contains(username)) {
+            put(username, memberId);
+        }
+        if (lookups.merge(username, -1, Integer::sum) == 0) {
+            lookups.remove(username);
+            staleLookups.remove(username);
+        }
+    }
+
+    public synchronized void evict(String username){
+        Long memberId = ids.remove(username);
+        if (memberId != null) {
+            usernames.remove(memberId);
+        }
+    }
+
+    public synchronized void evictId(Long memberId){
+        String username = usernames.remove(memberId);
+        if (username != null) {
+            ids.remove(username);
+        }
+    }
+
+    public synchronized void clear(){
+        ids.clear();
+        usernames.clear();
+        staleLookups.addAll(lookups.keySet());
+    }
+
+    public synchronized int size(){
+        return ids.size();
+    }
+
+    private synchronized void onChanges(List<ChangeEvent> events)
+    {
+        for (ChangeEvent event : events) {
+            switch (event.getType()) {
+                case OVERFLOW:
+                    clear();
+                    return;
+                case INSERT:
+                    if (event.getEntityType() == Member.class) {
+                        invalidate(event.getNaturalKey());
+                    }
+                    break;
+                case UPDATE:
+                case DELETE:
+                    if (event.getEntityType() == Member.class && event.affects("username")) {
+                        evictId(event.getId());
+                        if (event.getType() == ChangeEvent.Type.UPDATE) {
+                            invalidate(event.getNaturalKey());
+                        }
+                    }
+                    break;
+                case BULK_UPDATE:
+                    //바뀐 username 을 모르므로 중복이 생겼을 수 있다.
+                    if (event.getEntityType() == Member.class && event.affects("username")) {
+                        clear();
+                    }
+                    break;
+                case BULK_DELETE:
+                    if (event.getEntityType() == Member.class) {
+                        usernames.keySet().removeIf(memberId -> {
+                            if (event.covers(memberId)) {
+                                ids.remove(usernames.get(memberId));
+                                return true;
+                            }
+                            return false;
+                        });
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    //username 을 모르면(null) 전부 버린다.
+    private void invalidate(String username)
+    {
+        if (username == null) {
+            clear();
+            return;
+        }
+        evict(username);
+        if (lookups.containsKey(username)) {
+            staleLookups.add(username);
+        }
+    }
+}
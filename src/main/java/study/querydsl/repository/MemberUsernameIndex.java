@@ -0,0 +1,396 @@
+package study.querydsl.repository;
+
+import static study.querydsl.entity.QMember.member;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+
+/*
+ * username 부분 검색(contains)용 메모리 trigram 인덱스.
+ *
+ * - 검색어의 trigram 을 모두 가진 member_id 를 후보로 돌려준다.
+ *   후보는 DB 에서 like '%x%' 로 한번 더 거르므로 인덱스에 남은 옛 이름은 결과를 틀리게 하지 않는다.
+ * - 인덱스는 전용 스레드(member-username-index)가 자기 읽기 전용 트랜잭션으로 읽고 고친다.
+ *   검색 스레드는 DB 를 읽지 않고, 검색하는 쪽 트랜잭션의 커밋 전 변경이 인덱스에 들어가지도 않는다.
+ *   애플리케이션이 뜨면 바로 전체를 읽어둔다. (그때의 최대 member_id 가 loadedMaxId)
+ * - 커밋된 변경은 ChangeEventBus 로 받는다. username 이 바뀌었을 수 있는 id/구간(BULK_* 포함)을 표시해 두고
+ *   전용 스레드가 DB 에서 다시 읽는다. 다시 읽은 id 만큼 loadedMaxId 도 올라간다.
+ *   OVERFLOW 를 받으면 전체를 다시 읽는다.
+ * - id > loadedMaxId 인 회원은 인덱스에 있든 없든 항상 검색 대상에 넣는다.
+ * - 아직 읽지 않았거나 다시 읽을 변경이 남아 있으면 candidates 는 null 을 돌려서 like 로 검색하게 한다.
+ *
+ * 한계 : 이벤트로 알려지지 않는 변경(ChangeEventBus 참고 : 알리지 않는 벌크 update, 다른 프로세스)과
+ * 같은 트랜잭션 안에서 커밋 전에 insert/이름 변경한 회원은 인덱스 기준으로 후보가 된다.
+ * (insert 한 회원은 id 가 loadedMaxId 보다 클 때만 보인다)
+ * 커밋된 뒤 이벤트가 전달되기 전까지도 마찬가지다.
+ * 다른 프로세스도 member 를 쓰는 환경이면 member.username-index.enabled=false 로 끄고 like 만 쓸 것.
+ * */
+@Slf4j
+@Component
+public class MemberUsernameIndex
+{
+    public static final int GRAM = 3;
+    private static final int IN_CLAUSE_SIZE = 1000;
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate readTransaction;
+    private final boolean enabled;
+    //인덱스를 읽고 고치는 스레드
+    private final ExecutorService maintainer;
+    //maintainer 에 작업이 예약돼 있으면 true
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    //null 이면 아직 읽지 않음
+    private volatile State state;
+
+    //이벤트로 받은, 다시 읽어야 하는 id/구간과 다시 읽는 중인지. dirtyLock 으로 보호
+    private final Object dirtyLock = new Object();
+    private Set<Long> dirtyIds = new HashSet<>();
+    private List<long[]> dirtyRanges = new ArrayList<>();
+    private boolean reloading;
+    //OVERFLOW 를 받을 때마다 증가. 읽는 도중 OVERFLOW 가 오면 읽은 결과를 state 로 쓰지 않는다.
+    private long generation;
+
+    public MemberUsernameIndex(JPAQueryFactory queryFactory,
+                               PlatformTransactionManager transactionManager,
+                               ChangeEventBus changeEventBus,
+                               @Value("${member.username-index.enabled:true}") boolean enabled)
+    {
+        this.queryFactory = queryFactory;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.maintainer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "member-username-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        changeEventBus.subscribe(this::onChanges);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp(){
+        schedule();
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        maintainer.shutdownNow();
+    }
+
+    //이 검색어로 인덱스를 쓸 수 있는지. false 면 contains 는 like '%x%' 전체 스캔이 된다.
+    public boolean usable(String fragment){
+        return enabled && fragment != null && fragment.length() >= GRAM;
+    }
+
+    /*
+     * @return 후보. 검색어가 GRAM 보다 짧거나 인덱스가 최신이 아니면 null (like 로 검색할 것)
+     * */
+    public Candidates candidates(String fragment){
+        if (!usable(fragment)) {
+            return null;
+        }
+        State current = state;
+        if (current == null || hasPendingChanges()) {
+            schedule();
+            return null;
+        }
+
+        Set<Long> result = null;
+        for (String gram : gramsOf(fragment)) {
+            Set<Long> ids = current.grams.getOrDefault(gram, Collections.emptySet());
+            if (result == null) {
+                result = new HashSet<>(ids);
+            } else {
+                result.retainAll(ids);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return new Candidates(result, current.loadedMaxId);
+    }
+
+    //다음 유지 작업 때 전체를 다시 읽는다.
+    public void rebuild(){
+        invalidate();
+        schedule();
+    }
+
+    private boolean hasPendingChanges()
+    {
+        synchronized (dirtyLock) {
+            return reloading || !dirtyIds.isEmpty() || !dirtyRanges.isEmpty();
+        }
+    }
+
+    private void invalidate()
+    {
+        synchronized (dirtyLock) {
+            state = null;
+            generation++;
+            dirtyIds.clear();
+            dirtyRanges.clear();
+        }
+    }
+
+    private void schedule()
+    {
+        if (!enabled || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintainer.execute(this::maintain);
+        } catch (RejectedExecutionException e) {
+            //종료 중
+            scheduled.set(false);
+        }
+    }
+
+    private void maintain()
+    {
+        //작업 중에 온 변경은 다시 예약되도록 먼저 푼다.
+        scheduled.set(false);
+        try {
+            if (state == null) {
+                load();
+            }
+            reloadDirty();
+        } catch (RuntimeException e) {
+            //다음 검색 때 다시 시도
+            log.warn("member username index maintenance failed. contains falls back to like", e);
+        }
+    }
+
+    private void load()
+    {
+        long loadingGeneration;
+        synchronized (dirtyLock) {
+            loadingGeneration = generation;
+        }
+        State loaded = readTransaction.execute(status -> {
+            State result = new State();
+            for (Tuple tuple : queryFactory.select(member.id, member.username).from(member).fetch()) {
+                result.add(tuple.get(member.id), tuple.get(member.username));
+            }
+            return result;
+        });
+        synchronized (dirtyLock) {
+            //읽는 동안 온 변경은 dirty 에 남아 있다가 reloadDirty 에서 반영된다.
+            if (loadingGeneration == generation) {
+                state = loaded;
+            }
+        }
+    }
+
+    private void reloadDirty()
+    {
+        State current;
+        Set<Long> ids;
+        List<long[]> ranges;
+        synchronized (dirtyLock) {
+            current = state;
+            if (current == null || (dirtyIds.isEmpty() && dirtyRanges.isEmpty())) {
+                return;
+            }
+            ids = dirtyIds;
+            ranges = dirtyRanges;
+            dirtyIds = new HashSet<>();
+            dirtyRanges = new ArrayList<>();
+            //다시 읽는 동안에는 검색이 반쯤 고친 인덱스를 쓰지 않도록 한다.
+            reloading = true;
+        }
+        try {
+            readTransaction.executeWithoutResult(status -> reload(current, ids, ranges));
+        } catch (RuntimeException e) {
+            synchronized (dirtyLock) {
+                if (state == current) {
+                    dirtyIds.addAll(ids);
+                    dirtyRanges.addAll(ranges);
+                }
+            }
+            throw e;
+        } finally {
+            synchronized (dirtyLock) {
+                reloading = false;
+            }
+        }
+    }
+
+    private void reload(State target, Set<Long> ids, List<long[]> ranges)
+    {
+        Map<Long, String> current = new HashMap<>();
+        List<Long> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += IN_CLAUSE_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + IN_CLAUSE_SIZE, idList.size()));
+            queryFactory.select(member.id, member.username).from(member).where(member.id.in(chunk)).fetch()
+                .forEach(tuple -> current.put(tuple.get(member.id), tuple.get(member.username)));
+        }
+        for (long[] range : ranges) {
+            queryFactory.select(member.id, member.username).from(member).where(member.id.between(range[0], range[1])).fetch()
+                .forEach(tuple -> current.put(tuple.get(member.id), tuple.get(member.username)));
+        }
+
+        //DB 에 없으면 삭제된 회원
+        for (Long memberId : ids) {
+            if (!current.containsKey(memberId)) {
+                target.remove(memberId);
+            }
+        }
+        if (!ranges.isEmpty()) {
+            for (Long memberId : new ArrayList<>(target.usernames.keySet())) {
+                if (!current.containsKey(memberId) && inRanges(memberId, ranges)) {
+                    target.remove(memberId);
+                }
+            }
+        }
+        current.forEach(target::add);
+    }
+
+    private void onChanges(List<ChangeEvent> events)
+    {
+        boolean changed = false;
+        for (ChangeEvent event : events) {
+            if (event.getType() == ChangeEvent.Type.OVERFLOW) {
+                //놓친 이벤트가 있으므로 전체를 다시 읽는다.
+                invalidate();
+                changed = true;
+                continue;
+            }
+            if (event.getEntityType() != Member.class || !event.affects("username")) {
+                continue;
+            }
+            synchronized (dirtyLock) {
+                if (event.getId() != null) {
+                    dirtyIds.add(event.getId());
+                } else if (event.getFromId() != null) {
+                    dirtyRanges.add(new long[]{event.getFromId(), event.getToId()});
+                }
+            }
+            changed = true;
+        }
+        if (changed) {
+            schedule();
+        }
+    }
+
+    private static boolean inRanges(Long memberId, List<long[]> ranges)
+    {
+        for (long[] range : ranges) {
+            if (range[0] <= memberId && memberId <= range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> gramsOf(String text)
+    {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            result.add(text.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    /*
+     * ids 와 id > loadedMaxId 인 회원이 검색 대상. (like 로 한번 더 걸러야 한다)
+     * */
+    @Getter
+    public static class Candidates
+    {
+        private final Set<Long> ids;
+        private final long loadedMaxId;
+
+        Candidates(Set<Long> ids, long loadedMaxId)
+        {
+            this.ids = ids == null ? Collections.emptySet() : ids;
+            this.loadedMaxId = loadedMaxId;
+        }
+    }
+
+    private static class State
+    {
+        private final Map<String, Set<Long>> grams = new ConcurrentHashMap<>();
+        private final Map<Long, String> usernames = new ConcurrentHashMap<>();
+        //trigram 을 넣은 뒤에 올린다. 검색은 이 값까지는 인덱스에 있다고 본다.
+        private volatile long loadedMaxId;
+
+        void add(Long memberId, String username)
+        {
+            if (memberId == null || username == null) {
+                remove(memberId);
+                return;
+            }
+            addGrams(memberId, username);
+            if (memberId > loadedMaxId) {
+                loadedMaxId = memberId;
+            }
+        }
+
+        private void addGrams(Long memberId, String username)
+        {
+            //새 trigram 을 먼저 넣고 옛 trigram 을 빼야 검색 중에 잠깐 빠지는 일이 없다.
+            String previous = usernames.put(memberId, username);
+            for (String gram : gramsOf(username)) {
+                grams.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(memberId);
+            }
+            if (previous != null && !previous.equals(username)) {
+                Set<String> current = gramsOf(username);
+                for (String gram : gramsOf(previous)) {
+                    if (!current.contains(gram)) {
+                        unindex(gram, memberId);
+                    }
+                }
+            }
+        }
+
+        void remove(Long memberId)
+        {
+            if (memberId == null) {
+                return;
+            }
+            String previous = usernames.remove(memberId);
+            if (previous != null) {
+                for (String gram : gramsOf(previous)) {
+                    unindex(gram, memberId);
+                }
+            }
+        }
+
+        private void unindex(String gram, Long memberId)
+        {
+            Set<Long> ids = grams.get(gram);
+            if (ids != null) {
+                ids.remove(memberId);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package study.querydsl.repository;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/*
+ * 조회 종류(QueryClass)별 동시 실행 수 제한(bulkhead).
+ *
+ * 비싼 search 가 커넥션 풀을 다 잡아서 findById 같은 가벼운 조회가 굶지 않도록 종류별로 permit 을 나눈다.
+ * permit 이 없으면 queue-timeout-ms 만큼만 기다리고 QueryRejectedException 으로 바로 거절한다.
+ * 종류별 쿼리 타임아웃은 TIMEOUT_HINT 로 JPA 쿼리에 걸어준다. (em.find 는 이 힌트를 쓰지 않으므로 쿼리로 읽을 것)
+ *
+ * 설정 : query.admission.{lookup|search}.max-concurrent / queue-timeout-ms / query-timeout-ms
+ * */
+@Component
+public class QueryAdmissionControl
+{
+    public static final String TIMEOUT_HINT = "javax.persistence.query.timeout";
+
+    public enum QueryClass
+    {
+        //id, username 단건 조회
+        LOOKUP(50, 100, 1000),
+        //조건 검색, 전체 조회, 통계
+        SEARCH(4, 200, 3000);
+
+        private final int maxConcurrent;
+        private final long queueTimeoutMillis;
+        private final int queryTimeoutMillis;
+
+        QueryClass(int maxConcurrent, long queueTimeoutMillis, int queryTimeoutMillis)
+        {
+            this.maxConcurrent = maxConcurrent;
+            this.queueTimeoutMillis = queueTimeoutMillis;
+            this.queryTimeoutMillis = queryTimeoutMillis;
+        }
+    }
+
+    private final Map<QueryClass, Semaphore> permits = new EnumMap<>(QueryClass.class);
+    private final Map<QueryClass, Long> queueTimeouts = new EnumMap<>(QueryClass.class);
+    private final Map<QueryClass, Integer> queryTimeouts = new EnumMap<>(QueryClass.class);
+
+    public QueryAdmissionControl(Environment env)
+    {
+        for (QueryClass queryClass : QueryClass.values()) {
+            String prefix = "query.admission." + queryClass.name().toLowerCase() + ".";
+            int maxConcurrent = env.getProperty(prefix + "max-concurrent", Integer.class, queryClass.maxConcurrent);
+            permits.put(queryClass, new Semaphore(maxConcurrent, true));
+            queueTimeouts.put(queryClass, env.getProperty(prefix + "queue-timeout-ms", Long.class, queryClass.queueTimeoutMillis));
+            queryTimeouts.put(queryClass, env.getProperty(prefix + "query-timeout-ms", Integer.class, queryClass.queryTimeoutMillis));
+        }
+    }
+
+    public <T> T execute(QueryClass queryClass, Supplier<T> query){
+        Semaphore semaphore = permits.get(queryClass);
+        acquire(queryClass, semaphore);
+        try {
+            return query.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    public int queryTimeoutMillis(QueryClass queryClass){
+        return queryTimeouts.get(queryClass);
+    }
+
+    public int available(QueryClass queryClass){
+        return permits.get(queryClass).availablePermits();
+    }
+
+    private void acquire(QueryClass queryClass, Semaphore semaphore)
+    {
+        try {
+            if (!semaphore.tryAcquire(queueTimeouts.get(queryClass), TimeUnit.MILLISECONDS)) {
+                throw new QueryRejectedException(queryClass + " queries are saturated");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryRejectedException(queryClass + " query interrupted while waiting");
+        }
+    }
+}
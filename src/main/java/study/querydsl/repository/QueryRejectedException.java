@@ -0,0 +1,10 @@
+package study.querydsl.repository;
+
+//동시 실행 한도를 넘었거나 비용이 너무 큰 조회를 거절할 때
+public class QueryRejectedException extends RuntimeException
+{
+    public QueryRejectedException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,65 @@
+package study.querydsl.repository;
+
+import java.time.temporal.Temporal;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Template;
+import com.querydsl.core.types.TemplateFactory;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.StringTemplate;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Component;
+
+/*
+ * 쿼리에서 쓰는 DB 함수 모음. 함수 이름을 한곳에서 관리하고 시작할 때 방언 등록을 확인한다.
+ *
+ * ex) queryFactory.select(SqlFunctions.replace(member.username, "member", "M")).from(member)
+ *
+ * 인자는 바인딩 파라미터로 들어가기 때문에 값이 달라도 JPQL 문자열은 항상 같다.
+ * -> Hibernate 쿼리 플랜 캐시에 걸려서 함수 조회/SQL 번역은 처음 한번만 한다.
+ * 속도는 Expressions.stringTemplate("function(...)", ...) 로 직접 만드는 것과 같다.
+ * (Querydsl TemplateFactory 가 템플릿 문자열별로 파싱 결과를 캐시하고, 만들어지는 JPQL 도 같음)
+ * JPQL/Querydsl 에 이미 있는 함수(lower, upper, concat, substring ...)는 여기 두지 말고 그대로 쓸 것.
+ * 새 함수는 템플릿 상수 + 메소드 + FUNCTION_NAMES 에 추가할 것.
+ * 시작할 때 방언(Dialect)에 등록되지 않은 함수가 있으면 바로 실패한다.
+ * */
+@Component
+@RequiredArgsConstructor
+public class SqlFunctions
+{
+    private static final Template REPLACE = TemplateFactory.DEFAULT.create("function('replace',{0},{1},{2})");
+    private static final Template SOUNDEX = TemplateFactory.DEFAULT.create("function('soundex',{0})");
+    private static final Template DAYNAME = TemplateFactory.DEFAULT.create("function('dayname',{0})");
+
+    static final List<String> FUNCTION_NAMES = List.of("replace", "soundex", "dayname");
+
+    private final EntityManagerFactory emf;
+
+    @PostConstruct
+    public void verify(){
+        SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        for (String name : FUNCTION_NAMES) {
+            if (sessionFactory.getSqlFunctionRegistry().findSQLFunction(name) == null) {
+                throw new IllegalStateException("sql function not registered in dialect: " + name);
+            }
+        }
+    }
+
+    public static StringTemplate replace(Expression<String> target, String from, String to){
+        return Expressions.stringTemplate(REPLACE, target, from, to);
+    }
+
+    //발음이 비슷한 이름 찾기. ex) Smith, Smyth -> S530
+    public static StringTemplate soundex(Expression<String> target){
+        return Expressions.stringTemplate(SOUNDEX, target);
+    }
+
+    //요일 이름(영어). ex) Monday
+    public static StringTemplate dayName(Expression<? extends Temporal> target){
+        return Expressions.stringTemplate(DAYNAME, target);
+    }
+}
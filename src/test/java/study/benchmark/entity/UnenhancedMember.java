@@ -0,0 +1,34 @@
+package study.benchmark.entity;
+
+import javax.persistence.*;
+
+import lombok.*;
+import study.querydsl.entity.Team;
+
+/*
+ * flush 비교용 Member 복사본. 테스트 소스는 bytecode enhancement 대상이 아니라서
+ * 변경감지를 예전 방식(스냅샷과 필드 비교)으로 한다.
+ * 애플리케이션 패키지 밖에 두어서 FlushBenchmarkTest 의 컨텍스트만 이 엔티티(테이블)를 만든다.
+ * */
+@Entity
+@Table(name = "unenhanced_member")
+@Getter @Setter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class UnenhancedMember
+{
+    @Id @GeneratedValue
+    private Long id;
+    private String username;
+    private int age;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "team_id")
+    private Team team;
+
+    public UnenhancedMember(String username, int age, Team team)
+    {
+        this.username = username;
+        this.age = age;
+        this.team = team;
+    }
+}
@@ -0,0 +1,44 @@
+package study.querydsl.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MemberTeamColumnarPageTest
+{
+    @Test
+    public void encodeAndWrap(){
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            String teamName = i % 2 == 0 ? "teamA" : "팀B";
+            rows.add(new MemberTeamDto(i + 1, "member" + i, (int) i, i % 2 + 1, teamName));
+        }
+        //팀 없는 회원 (left join)
+        rows.add(new MemberTeamDto(101L, null, 5, null, null));
+
+        MemberTeamColumnarPage page = MemberTeamColumnarPage.encode(rows, true);
+        assertThat(page).containsExactlyElementsOf(rows);
+        assertThat(page.memberId(10)).isEqualTo(11L);
+        assertThat(page.age(10)).isEqualTo(10);
+        assertThat(page.teamName(11)).isEqualTo("팀B");
+        assertThat(page.teamId(100)).isEqualTo(MemberTeamColumnarPage.NULL_ID);
+
+        //받은 쪽에서 힙 버퍼로 복사해 와도 그대로 열린다.
+        ByteBuffer received = ByteBuffer.allocate(page.sizeInBytes());
+        received.put(page.buffer());
+        received.flip();
+        MemberTeamColumnarPage copy = MemberTeamColumnarPage.wrap(received);
+        assertThat(copy).containsExactlyElementsOf(rows);
+    }
+
+    @Test
+    public void emptyPage(){
+        MemberTeamColumnarPage page = MemberTeamColumnarPage.encode(List.of(), false);
+        assertThat(page).isEmpty();
+        assertThat(page.sizeInBytes()).isEqualTo(Integer.BYTES * 3);
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.util.List;
 import javax.persistence.EntityManager;
 
+import org.hibernate.engine.spi.SelfDirtinessTracker;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -45,5 +46,23 @@ class MemberTest
         }
     }
 
+    @Test
+    public void enhanced(){
+        //build.gradle 의 hibernate enhance 설정이 적용되었는지 확인
+        Member member = new Member("member1", 10);
+        assertTrue(member instanceof SelfDirtinessTracker);
+        assertTrue(new Team("teamA") instanceof SelfDirtinessTracker);
+    }
+
+    @Test
+    public void dirtyTracking(){
+        //변경된 필드만 추적된다. flush 비용 비교는 study.querydsl.load.FlushBenchmarkTest
+        Member member = new Member("member1", 10);
+        em.persist(member);
+        em.flush();
+        ((SelfDirtinessTracker) member).$$_hibernate_clearDirtyAttributes();
 
+        member.setAge(1);
+        assertArrayEquals(new String[]{"age"}, ((SelfDirtinessTracker) member).$$_hibernate_getDirtyAttributes());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package study.querydsl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+//커밋 이후에만 이벤트가 나가므로 테스트 트랜잭션 없이 TransactionTemplate 으로 커밋한다.
+@SpringBootTest
+class HibernateChangeEventListenerTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    ChangeEventBus changeEventBus;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    List<ChangeEvent> received = new CopyOnWriteArrayList<>();
+    Runnable unsubscribe;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        unsubscribe = changeEventBus.subscribe(received::addAll);
+    }
+
+    @AfterEach
+    public void after(){
+        unsubscribe.run();
+    }
+
+    @Test
+    public void publishAfterCommit() throws InterruptedException
+    {
+        Long[] ids = tx.execute(status -> {
+            Team teamA = new Team("eventTeamA");
+            Team teamB = new Team("eventTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member = new Member("eventMember", 10, teamA);
+            em.persist(member);
+            return new Long[]{member.getId(), teamA.getId(), teamB.getId()};
+        });
+        Long memberId = ids[0];
+        ChangeEvent inserted = awaitEvent(e -> e.getType() == ChangeEvent.Type.INSERT && memberId.equals(e.getId()));
+        assertThat(inserted.getNaturalKey()).isEqualTo("eventMember");
+
+        tx.executeWithoutResult(status ->
+            em.find(Member.class, memberId).changTeam(em.find(Team.class, ids[2])));
+        ChangeEvent teamChanged = awaitEvent(e -> e.getType() == ChangeEvent.Type.TEAM_CHANGED);
+        assertThat(teamChanged.getId()).isEqualTo(memberId);
+        assertThat(teamChanged.getOldTeamId()).isEqualTo(ids[1]);
+        assertThat(teamChanged.getNewTeamId()).isEqualTo(ids[2]);
+
+        //롤백된 변경은 이벤트가 없다.
+        tx.executeWithoutResult(status -> {
+            em.find(Member.class, memberId).setAge(99);
+            status.setRollbackOnly();
+        });
+
+        tx.executeWithoutResult(status -> {
+            em.remove(em.find(Member.class, memberId));
+            em.remove(em.find(Team.class, ids[1]));
+            em.remove(em.find(Team.class, ids[2]));
+        });
+        awaitEvent(e -> e.getType() == ChangeEvent.Type.DELETE && memberId.equals(e.getId()));
+
+        assertThat(received).filteredOn(e -> e.getType() == ChangeEvent.Type.UPDATE && memberId.equals(e.getId()))
+            .hasSize(1);
+    }
+
+    private ChangeEvent awaitEvent(Predicate<ChangeEvent> condition) throws InterruptedException
+    {
+        for (int i = 0; i < 50; i++) {
+            for (ChangeEvent event : received) {
+                if (condition.test(event)) {
+                    return event;
+                }
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("event not received. received=" + received);
+    }
+}
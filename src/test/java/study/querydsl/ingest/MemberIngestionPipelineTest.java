@@ -0,0 +1,128 @@
+package study.querydsl.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+
+//StatelessSession 이 batch 마다 커밋하므로 테스트 트랜잭션을 쓰지 않고 끝나면 지운다.
+@SpringBootTest(properties = {
+    "member.ingest.batch-size=2",
+    "member.ingest.queue-capacity=2"
+})
+class MemberIngestionPipelineTest
+{
+    @Autowired
+    MemberIngestionPipeline pipeline;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void after(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.username.startsWith("ingest")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("ingestTeam")).execute();
+        });
+    }
+
+    @Test
+    public void ingest(){
+        IngestionReport first = pipeline.ingest(new StringReader(
+            "# username,age,teamName\n" +
+            "ingest1,10,ingestTeamA\n" +
+            "ingest2,20,ingestTeamA\n" +
+            "ingest3,30,ingestTeamB\n" +
+            "ingest4,abc,ingestTeamB\n" +
+            "ingest5,50,\n"));
+
+        assertThat(first.getInserted()).isEqualTo(4);
+        assertThat(first.getRejected()).isEqualTo(1);
+        assertThat(first.getTeamsCreated()).isEqualTo(2);
+        assertThat(first.getStages()).extracting("records").containsExactly(4L, 4L, 4L);
+
+        //2차 캐시에 올려둔다.
+        assertThat(findAge("ingest1")).isEqualTo(10);
+
+        //두번째 파일 : ingest1 은 팀 이동 + 나이 변경, ingest6 은 신규
+        IngestionReport second = pipeline.ingest(new StringReader(
+            "ingest1,11,ingestTeamB\n" +
+            "ingest6,60,ingestTeamB\n"));
+
+        assertThat(second.getUpdated()).isEqualTo(1);
+        assertThat(second.getInserted()).isEqualTo(1);
+        assertThat(second.getTeamsCreated()).isEqualTo(0);
+
+        List<Member> result = new TransactionTemplate(transactionManager).execute(status ->
+            queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.username.eq("ingest1"))
+                .fetch());
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getAge()).isEqualTo(11);
+        assertThat(result.get(0).getTeam().getName()).isEqualTo("ingestTeamB");
+
+        //StatelessSession 으로 update 한 회원은 2차 캐시에서 지워져서 새 값이 보여야 한다.
+        assertThat(findAge("ingest1")).isEqualTo(11);
+    }
+
+    /*
+     * write 가 실패하면 큐가 가득 차서 기다리던 parse/resolve 스레드도 끝나고 source 가 닫혀야 한다.
+     * */
+    @Test
+    public void writeFailureStopsOtherStages() throws InterruptedException
+    {
+        StringBuilder lines = new StringBuilder();
+        //username 컬럼(255)보다 길어서 첫 batch 에서 실패
+        lines.append("ingest").append("x".repeat(300)).append(",10,\n");
+        for (int i = 0; i < 100; i++) {
+            lines.append("ingest").append(i).append(",10,\n");
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        StringReader source = new StringReader(lines.toString())
+        {
+            @Override
+            public void close()
+            {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        assertThatThrownBy(() -> pipeline.ingest(source)).isInstanceOf(RuntimeException.class);
+        assertThat(closed).isTrue();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().startsWith("member-ingest-"))) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private int findAge(String username)
+    {
+        return new TransactionTemplate(transactionManager).execute(status ->
+            memberJpaRepository.findOneByUsername(username).orElseThrow().getAge());
+    }
+}
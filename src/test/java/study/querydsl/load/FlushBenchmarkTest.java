@@ -0,0 +1,84 @@
+package study.querydsl.load;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+import study.benchmark.entity.UnenhancedMember;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+/*
+ * 많은 엔티티를 읽어둔 상태에서 한건만 바꾸고 flush 하는 비용을
+ * enhancement 된 Member 와 enhancement 안 된 UnenhancedMember(테스트 소스)로 비교한다.
+ * 시간을 재는 테스트라 일반 test 에서는 빠지고 ./gradlew loadTest 로 실행한다.
+ * */
+@Tag("load")
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:flushbenchmark;DB_CLOSE_DELAY=-1",
+    "logging.level.org.hibernate.SQL=warn",
+    "decorator.datasource.p6spy.enable-logging=false"
+})
+@Transactional
+class FlushBenchmarkTest
+{
+    //UnenhancedMember 는 이 컨텍스트에서만 엔티티로 등록한다.
+    @TestConfiguration
+    @EntityScan(basePackageClasses = {QuerydslApplication.class, UnenhancedMember.class})
+    static class UnenhancedEntityConfig
+    {
+    }
+
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void flushBenchmark(){
+        int count = 5000;
+        int rounds = 50;
+        Team team = new Team("teamA");
+        em.persist(team);
+        for (int i = 0; i < count; i++) {
+            em.persist(new Member("member" + i, i, team));
+            em.persist(new UnenhancedMember("member" + i, i, team));
+        }
+        em.flush();
+        em.clear();
+
+        //워밍업
+        flushRounds(Member.class, rounds, Member::setAge);
+        flushRounds(UnenhancedMember.class, rounds, UnenhancedMember::setAge);
+
+        long enhanced = flushRounds(Member.class, rounds, Member::setAge);
+        long unenhanced = flushRounds(UnenhancedMember.class, rounds, UnenhancedMember::setAge);
+        System.out.println("flush " + count + " managed entities: enhanced "
+            + TimeUnit.NANOSECONDS.toMicros(enhanced) + "us/flush, unenhanced "
+            + TimeUnit.NANOSECONDS.toMicros(unenhanced) + "us/flush ("
+            + String.format("%.1f", unenhanced / (double) enhanced) + "x)");
+        assertThat(enhanced).isLessThan(unenhanced);
+    }
+
+    //@return flush 한번 평균 nanos
+    private <T> long flushRounds(Class<T> type, int rounds, ObjIntConsumer<T> setAge)
+    {
+        em.clear();
+        List<T> entities = em.createQuery("select m from " + type.getSimpleName() + " m", type).getResultList();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            setAge.accept(entities.get(i), i + 1000 + (int) (start % 1000));
+            em.flush();
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+}
@@ -0,0 +1,55 @@
+package study.querydsl.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+//부하 테스트용 지연시간 기록. 샘플을 다 들고 있다가 끝나고 정렬해서 백분위를 구한다.
+class LatencyRecorder
+{
+    private long[] samples = new long[1024];
+    private int size;
+    private volatile boolean recording = true;
+
+    synchronized void record(long nanos){
+        if (!recording) {
+            return;
+        }
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    synchronized void reset(){
+        size = 0;
+    }
+
+    void stop(){
+        recording = false;
+    }
+
+    synchronized int count(){
+        return size;
+    }
+
+    synchronized String summary(){
+        if (size == 0) {
+            return "n=0";
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return String.format("n=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+            size, millis(sorted, 0.50), millis(sorted, 0.95), millis(sorted, 0.99), toMillis(sorted[size - 1]));
+    }
+
+    private static double millis(long[] sorted, double percentile)
+    {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return toMillis(sorted[Math.max(0, index)]);
+    }
+
+    private static double toMillis(long nanos)
+    {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
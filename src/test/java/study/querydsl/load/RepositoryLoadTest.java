@@ -0,0 +1,288 @@
+package study.querydsl.load;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.persistence.EntityManager;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+
+/*
+ * 레포지토리 호출을 섞어서 N 개의 워커가 쉬지 않고(closed-loop) 던지는 부하 테스트.
+ * 메모리 H2 를 쓰므로 외부 DB 없이 돈다. 일반 test 에서는 빠지고 ./gradlew loadTest 로 실행한다.
+ *
+ * ex) ./gradlew loadTest -Dload.workers=32 -Dload.duration-seconds=60 -Dload.mix=save=10,findById=60,search=25,bulk=5
+ *
+ * 결과 : 연산별 처리량/지연 백분위, 커넥션 풀 대기시간, 에러 종류별 횟수
+ * */
+@Tag("load")
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+    "spring.datasource.hikari.maximum-pool-size=10",
+    "logging.level.org.hibernate.SQL=warn",
+    "decorator.datasource.p6spy.enable-logging=false",
+    "member.age-buffer.flush-interval-ms=0"
+})
+class RepositoryLoadTest
+{
+    static final LatencyRecorder POOL_WAIT = new LatencyRecorder();
+
+    @TestConfiguration
+    static class PoolWaitConfig
+    {
+        //풀이 시작되기 전에 커넥션 획득 시간 기록기를 붙인다.
+        @Bean
+        static BeanPostProcessor poolWaitRecorder()
+        {
+            return new BeanPostProcessor()
+            {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName)
+                {
+                    if (bean instanceof HikariDataSource) {
+                        ((HikariDataSource) bean).setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker()
+                        {
+                            @Override
+                            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos)
+                            {
+                                POOL_WAIT.record(elapsedAcquiredNanos);
+                            }
+                        });
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${load.workers:16}")
+    int workers;
+    @Value("${load.warmup-seconds:5}")
+    int warmupSeconds;
+    @Value("${load.duration-seconds:20}")
+    int durationSeconds;
+    @Value("${load.members:2000}")
+    int memberCount;
+    @Value("${load.mix:save=20,findById=50,search=25,bulk=5}")
+    String mix;
+
+    TransactionTemplate tx;
+    List<Long> teamIds = new ArrayList<>();
+    AtomicLong minMemberId = new AtomicLong();
+    AtomicLong maxMemberId = new AtomicLong();
+    AtomicLong sequence = new AtomicLong();
+
+    @Test
+    public void replayMix() throws Exception
+    {
+        tx = new TransactionTemplate(transactionManager);
+        seed();
+
+        Map<String, Runnable> operations = operations();
+        List<String> weighted = weightedOperations(operations);
+        Map<String, LatencyRecorder> latencies = new LinkedHashMap<>();
+        operations.keySet().forEach(name -> latencies.put(name, new LatencyRecorder()));
+        Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    String name = weighted.get(random.nextInt(weighted.size()));
+                    boolean measured = now >= warmupEnd;
+                    try {
+                        operations.get(name).run();
+                        if (measured) {
+                            latencies.get(name).record(System.nanoTime() - now);
+                        }
+                    } catch (RuntimeException e) {
+                        if (measured) {
+                            errors.computeIfAbsent(name + " " + rootCause(e).getClass().getSimpleName(), k -> new LongAdder())
+                                .increment();
+                        }
+                    }
+                }
+            }));
+        }
+
+        //워밍업 동안의 풀 대기시간은 버린다.
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnd - System.nanoTime()));
+        POOL_WAIT.reset();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        POOL_WAIT.stop();
+
+        long total = 0;
+        System.out.println("=== load test : workers=" + workers + " duration=" + durationSeconds + "s mix=" + mix);
+        for (Map.Entry<String, LatencyRecorder> entry : latencies.entrySet()) {
+            int count = entry.getValue().count();
+            total += count;
+            System.out.printf("%-10s %8.1f ops/s  %s%n", entry.getKey(), count / (double) durationSeconds, entry.getValue().summary());
+        }
+        System.out.printf("%-10s %8.1f ops/s%n", "total", total / (double) durationSeconds);
+        System.out.println("pool wait  " + POOL_WAIT.summary());
+        errors.forEach((error, count) -> System.out.println("error      " + error + " x" + count.sum()));
+
+        assertThat(total).isGreaterThan(0);
+    }
+
+    private void seed()
+    {
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < 10; i++) {
+                Team team = new Team("loadTeam" + i);
+                em.persist(team);
+                teamIds.add(team.getId());
+            }
+            for (int i = 0; i < memberCount; i++) {
+                Member seeded = newMember();
+                em.persist(seeded);
+                if (i == 0) {
+                    minMemberId.set(seeded.getId());
+                }
+                maxMemberId.set(seeded.getId());
+            }
+        });
+    }
+
+    private Map<String, Runnable> operations()
+    {
+        Map<String, Runnable> operations = new LinkedHashMap<>();
+        operations.put("save", () -> tx.executeWithoutResult(status -> {
+            Member saved = newMember();
+            memberJpaRepository.save(saved);
+            maxMemberId.accumulateAndGet(saved.getId(), Math::max);
+        }));
+        operations.put("findById", () -> tx.execute(status -> memberJpaRepository.findById(randomMemberId())));
+        operations.put("search", () -> tx.execute(status -> search()));
+        operations.put("bulk", () -> tx.execute(status -> {
+            long from = randomMemberId();
+            return queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.id.between(from, from + 50))
+                .execute();
+        }));
+        return operations;
+    }
+
+    //검색 조건 모양을 골고루 섞는다.
+    private Object search()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        switch (random.nextInt(6)) {
+            case 0:
+                condition.setUsername("load" + random.nextLong(1, sequence.get() + 1));
+                break;
+            case 1:
+                condition.setUsername("load" + random.nextInt(1, 10));
+                condition.setUsernameMatch(UsernameMatch.PREFIX);
+                break;
+            case 2:
+                condition.setTeamName("loadTeam" + random.nextInt(10));
+                break;
+            case 3:
+                int ageGoe = random.nextInt(60);
+                condition.setAgeGoe(ageGoe);
+                condition.setAgeLoe(ageGoe + 5);
+                break;
+            case 4:
+                condition.setTeamName("loadTeam" + random.nextInt(10));
+                condition.setAgeGoe(random.nextInt(60));
+                return memberJpaRepository.search(condition, PageRequest.of(random.nextInt(5), 20, Sort.by(Sort.Order.desc("age"))));
+            default:
+                //조건 없음 : 전체 조회
+                break;
+        }
+        return memberJpaRepository.search(condition);
+    }
+
+    private Member newMember()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Member newMember = new Member("load" + sequence.incrementAndGet(), random.nextInt(70));
+        newMember.setTeam(em.getReference(Team.class, teamIds.get(random.nextInt(teamIds.size()))));
+        return newMember;
+    }
+
+    private long randomMemberId()
+    {
+        return ThreadLocalRandom.current().nextLong(minMemberId.get(), maxMemberId.get() + 1);
+    }
+
+    private List<String> weightedOperations(Map<String, Runnable> operations)
+    {
+        List<String> weighted = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split("=");
+            if (!operations.containsKey(nameAndWeight[0])) {
+                throw new IllegalArgumentException("unknown operation in load.mix: " + nameAndWeight[0]);
+            }
+            for (int i = 0; i < Integer.parseInt(nameAndWeight[1]); i++) {
+                weighted.add(nameAndWeight[0]);
+            }
+        }
+        return weighted;
+    }
+
+    private static Throwable rootCause(Throwable e)
+    {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,131 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.persistence.EntityManager;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+
+//주기 flush 를 끄고 테스트에서 직접 flush 한다.
+//flush 는 자기 트랜잭션으로 커밋하므로 회원도 커밋해 두고 끝나면 지운다.
+@SpringBootTest(properties = "member.age-buffer.flush-interval-ms=0")
+class MemberAgeIncrementBufferTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberAgeIncrementBuffer buffer;
+
+    @Autowired
+    ChangeEventBus changeEventBus;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    Member member1;
+    Member member2;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        member1 = new Member("ageBuffer1", 10);
+        member2 = new Member("ageBuffer2", 20);
+        tx.executeWithoutResult(status -> {
+            em.persist(member1);
+            em.persist(member2);
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        tx.executeWithoutResult(status ->
+            queryFactory.delete(member).where(member.username.startsWith("ageBuffer")).execute());
+    }
+
+    @Test
+    public void coalesceIncrements(){
+        for (int i = 0; i < 100; i++) {
+            buffer.increment(member1.getId());
+        }
+        buffer.add(member2.getId(), 5);
+        assertThat(buffer.pendingCount()).isEqualTo(2);
+
+        long updated = buffer.flush();
+        assertThat(updated).isEqualTo(2);
+        assertThat(buffer.pendingCount()).isEqualTo(0);
+
+        assertThat(ageOf(member1)).isEqualTo(110);
+        assertThat(ageOf(member2)).isEqualTo(25);
+    }
+
+    @Test
+    public void flushSurvivesCallerRollback(){
+        buffer.add(member1.getId(), 3);
+
+        //호출한 쪽 트랜잭션이 롤백되어도 flush 된 증가분은 남아 있어야 한다.
+        tx.executeWithoutResult(status -> {
+            buffer.flush();
+            status.setRollbackOnly();
+        });
+
+        assertThat(buffer.pendingCount()).isEqualTo(0);
+        assertThat(ageOf(member1)).isEqualTo(13);
+    }
+
+    @Test
+    public void publishOnlyChangedRanges() throws InterruptedException
+    {
+        Member member3 = new Member("ageBuffer3", 30);
+        tx.executeWithoutResult(status -> em.persist(member3));
+
+        List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        Runnable unsubscribe = changeEventBus.subscribe(events::addAll);
+        try {
+            buffer.increment(member1.getId());
+            buffer.increment(member3.getId());
+            buffer.flush();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!covered(events, member1) || !covered(events, member3)) {
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                Thread.sleep(10);
+            }
+            //member1, member3 사이의 member2 는 바뀌지 않았으므로 알리지 않는다.
+            assertThat(covered(events, member2)).isFalse();
+        } finally {
+            unsubscribe.run();
+        }
+    }
+
+    private boolean covered(List<ChangeEvent> events, Member target)
+    {
+        return events.stream().anyMatch(event -> event.getType() == ChangeEvent.Type.BULK_UPDATE && event.covers(target.getId()));
+    }
+
+    private int ageOf(Member target)
+    {
+        return tx.execute(status -> queryFactory
+            .select(member.age)
+            .from(member)
+            .where(member.id.eq(target.getId()))
+            .fetchOne());
+    }
+}
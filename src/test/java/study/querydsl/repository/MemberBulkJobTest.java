@@ -0,0 +1,126 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberArchive;
+
+//청크마다 REQUIRES_NEW 로 커밋하기 때문에 테스트 트랜잭션 없이 돌리고 끝나면 지운다.
+@SpringBootTest
+class MemberBulkJobTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberBulkJob memberBulkJob;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("bulk" + i, 10 + i * 2));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        memberBulkJob.reset("bulkDelete");
+        memberBulkJob.reset("bulkUpdate");
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.username.startsWith("bulk")).execute();
+            em.createQuery("delete from MemberArchive a where a.username like 'bulk%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void deleteInChunks(){
+        BulkJobOptions options = new BulkJobOptions();
+        options.setChunkSize(2);
+        options.setArchive(true);
+
+        //age > 18 : bulk5 ~ bulk9
+        List<BulkJobProgress> progresses = new ArrayList<>();
+        BulkJobProgress result = memberBulkJob.deleteInChunks("bulkDelete",
+            member.username.startsWith("bulk").and(member.age.gt(18)), options, progresses::add);
+
+        assertThat(result.isCompleted()).isTrue();
+        assertThat(result.getProcessed()).isEqualTo(5);
+        assertThat(result.getChunks()).isEqualTo(3);
+        assertThat(progresses).extracting("processed").containsExactly(2L, 4L, 5L, 5L);
+
+        List<MemberArchive> archived = tx.execute(status ->
+            em.createQuery("select a from MemberArchive a where a.username like 'bulk%'", MemberArchive.class)
+                .getResultList());
+        assertThat(archived).extracting("username")
+            .containsExactlyInAnyOrder("bulk5", "bulk6", "bulk7", "bulk8", "bulk9");
+
+        long remaining = tx.execute(status ->
+            queryFactory.select(member.count()).from(member).where(member.username.startsWith("bulk")).fetchOne());
+        assertThat(remaining).isEqualTo(5);
+
+        //끝난 작업은 다시 호출해도 아무것도 하지 않는다.
+        BulkJobProgress again = memberBulkJob.deleteInChunks("bulkDelete",
+            member.username.startsWith("bulk").and(member.age.gt(18)), options);
+        assertThat(again.getProcessed()).isEqualTo(5);
+
+        //같은 이름으로 다른 조건/작업을 돌리면 이전 작업의 결과를 돌려주지 않고 거절한다.
+        assertThatThrownBy(() -> memberBulkJob.deleteInChunks("bulkDelete", member.age.gt(0), options))
+            .isInstanceOf(IllegalStateException.class);
+        options.setArchive(false);
+        assertThatThrownBy(() -> memberBulkJob.deleteInChunks("bulkDelete",
+            member.username.startsWith("bulk").and(member.age.gt(18)), options))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void updateInChunks(){
+        BulkJobOptions options = new BulkJobOptions();
+        options.setChunkSize(3);
+
+        //age < 28 : bulk0 ~ bulk8 (10,12,...,26)
+        BulkJobProgress result = memberBulkJob.updateInChunks("bulkUpdate",
+            member.username.startsWith("bulk").and(member.age.lt(28)),
+            update -> update.set(member.username, "bulk-비회원"),
+            options);
+
+        assertThat(result.isCompleted()).isTrue();
+        assertThat(result.getProcessed()).isEqualTo(9);
+        assertThat(result.getChunks()).isEqualTo(3);
+
+        List<String> usernames = tx.execute(status ->
+            queryFactory.select(member.username).from(member).where(member.username.startsWith("bulk")).fetch());
+        assertThat(usernames).containsOnly("bulk-비회원", "bulk9");
+
+        //set 컬럼이 다르면 다른 작업
+        assertThatThrownBy(() -> memberBulkJob.updateInChunks("bulkUpdate",
+            member.username.startsWith("bulk").and(member.age.lt(28)),
+            update -> update.set(member.age, 0),
+            options))
+            .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,127 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.QueryCounter;
+import study.querydsl.support.QueryCounter.QueryCount;
+
+/*
+ * 레포지토리 메서드가 날리는 쿼리 수/row 수를 고정해둔다.
+ * N+1 이 생기거나 쿼리 모양이 바뀌면 여기서 깨진다.
+ * */
+@SpringBootTest
+@Transactional
+@Import(QueryCounter.class)
+class MemberJpaRepositoryQueryCountTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    QueryCounter queryCounter;
+
+    Long member1Id;
+
+    @BeforeEach
+    public void before(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1", 10, teamA);
+        em.persist(member1);
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+        member1Id = member1.getId();
+
+        //insert 가 측정에 섞이지 않도록 미리 flush
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void findById(){
+        QueryCount first = queryCounter.count(() -> memberJpaRepository.findById(member1Id));
+        assertThat(first.getStatements()).isEqualTo(1);
+        assertThat(first.getRows()).isEqualTo(1);
+
+        //같은 영속성 컨텍스트에서는 다시 조회하지 않는다.
+        QueryCount second = queryCounter.count(() -> memberJpaRepository.findById(member1Id));
+        assertThat(second.getStatements()).isEqualTo(0);
+    }
+
+    @Test
+    public void findByIdDoesNotFlush(){
+        //em.find 처럼 조회 때문에 쓰기 지연 중인 insert 가 먼저 나가지 않는다.
+        em.persist(new Member("member5", 50));
+        QueryCount count = queryCounter.count(() -> memberJpaRepository.findById(member1Id));
+        assertThat(count.getStatements()).isEqualTo(1);
+        assertThat(count.getSqls()).singleElement().asString().doesNotContainIgnoringCase("insert");
+    }
+
+    @Test
+    public void findByUsername(){
+        QueryCount count = queryCounter.count(() -> memberJpaRepository.findByUsername_Querydsl("member1"));
+        assertThat(count.getStatements()).isEqualTo(1);
+        assertThat(count.getRows()).isEqualTo(1);
+    }
+
+    @Test
+    public void searchIsSingleQuery(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        QueryCount count = queryCounter.count(() -> {
+            List<MemberTeamDto> result = memberJpaRepository.search(condition);
+            assertThat(result).hasSize(3);
+        });
+        assertThat(count.getStatements()).isEqualTo(1);
+        assertThat(count.getRows()).isEqualTo(3);
+    }
+
+    @Test
+    public void searchByBuilderIsSingleQuery(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        QueryCount count = queryCounter.count(() -> memberJpaRepository.searchByBuilder(condition));
+        assertThat(count.getStatements()).isEqualTo(1);
+        assertThat(count.getRows()).isEqualTo(2);
+    }
+
+    @Test
+    public void ageStatsByTeamIsSingleQuery(){
+        QueryCount count = queryCounter.count(() -> memberJpaRepository.ageStatsByTeam());
+        assertThat(count.getStatements()).isEqualTo(1);
+        assertThat(count.getRows()).isEqualTo(2);
+    }
+
+    @Test
+    public void lazyTeamIsNPlusOne(){
+        //fetch join 없이 team 을 건드리면 팀 수만큼 쿼리가 더 나간다. (fetchJoinNo 참고)
+        QueryCount count = queryCounter.count(() -> {
+            for (Member member : memberJpaRepository.findAll_Querydsl()) {
+                member.getTeam().getName();
+            }
+        });
+        assertThat(count.getStatements()).isEqualTo(1 + 2);
+    }
+}
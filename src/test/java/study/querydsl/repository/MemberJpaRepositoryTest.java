@@ -1,8 +1,10 @@
 package study.querydsl.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.EntityManager;
 
@@ -10,11 +12,25 @@ import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberAgeStats;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberSearchShape;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.TeamAgeStatsColumns;
+import study.querydsl.dto.UsernameMatch;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.QueryCounter;
+import study.querydsl.support.QueryCounter.QueryCount;
 
 @SpringBootTest
 @Transactional
+@Import(QueryCounter.class)
 class MemberJpaRepositoryTest
 {
     @Autowired
@@ -23,6 +39,9 @@ class MemberJpaRepositoryTest
     @Autowired
     MemberJpaRepository memberJpaRepository;
 
+    @Autowired
+    QueryCounter queryCounter;
+
     @Test
     public void basicTest(){
         Member member = new Member("member1", 10);
@@ -52,4 +71,173 @@ class MemberJpaRepositoryTest
         List<Member> result2 = memberJpaRepository.findByUsername_Querydsl("member1");
         assertThat(result2).containsExactly(member);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void ageStatsTest(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        memberJpaRepository.save(new Member("member1", 10, teamA));
+        memberJpaRepository.save(new Member("member2", 20, teamA));
+        memberJpaRepository.save(new Member("member3", 30, teamB));
+        memberJpaRepository.save(new Member("member4", 40, teamB));
+
+        MemberAgeStats stats = memberJpaRepository.ageStats();
+        assertThat(stats.getCount()).isEqualTo(4);
+        assertThat(stats.getSum()).isEqualTo(100);
+        assertThat(stats.getMin()).isEqualTo(10);
+        assertThat(stats.getMax()).isEqualTo(40);
+        assertThat(stats.getAvg()).isEqualTo(25.0);
+
+        TeamAgeStatsColumns byTeam = memberJpaRepository.ageStatsByTeam();
+        assertThat(byTeam.getTeamNames()).containsExactly("teamA", "teamB");
+        assertThat(byTeam.getAvgs()).containsExactly(15.0, 35.0);
+        assertThat(byTeam.get(byTeam.indexOf(teamB.getId())).getSum()).isEqualTo(70);
+        assertThat(byTeam.indexOf(-1L)).isEqualTo(-1);
+    }
+
+    @Test
+    public void ageStatsByTeamWithSameName(){
+        Team teamA1 = new Team("teamA");
+        Team teamA2 = new Team("teamA");
+        em.persist(teamA1);
+        em.persist(teamA2);
+
+        memberJpaRepository.save(new Member("member1", 10, teamA1));
+        memberJpaRepository.save(new Member("member2", 30, teamA2));
+
+        //이름이 같아도 팀별로 따로 집계
+        TeamAgeStatsColumns byTeam = memberJpaRepository.ageStatsByTeam();
+        assertThat(byTeam.size()).isEqualTo(2);
+        assertThat(byTeam.getTeamNames()).containsExactly("teamA", "teamA");
+        assertThat(byTeam.get(byTeam.indexOf(teamA1.getId())).getSum()).isEqualTo(10);
+        assertThat(byTeam.get(byTeam.indexOf(teamA2.getId())).getSum()).isEqualTo(30);
+    }
+
+    @Test
+    public void searchByUsernameMatch(){
+        memberJpaRepository.save(new Member("kim-member", 10));
+        memberJpaRepository.save(new Member("kimchi", 20));
+        memberJpaRepository.save(new Member("lee-member", 30));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("kim");
+        condition.setUsernameMatch(UsernameMatch.PREFIX);
+        assertThat(memberJpaRepository.search(condition)).extracting("username")
+            .containsExactlyInAnyOrder("kim-member", "kimchi");
+
+        condition.setUsername("-member");
+        condition.setUsernameMatch(UsernameMatch.CONTAINS);
+        assertThat(memberJpaRepository.search(condition)).extracting("username")
+            .containsExactlyInAnyOrder("kim-member", "lee-member");
+        assertThat(memberJpaRepository.searchByBuilder(condition)).extracting("username")
+            .containsExactlyInAnyOrder("kim-member", "lee-member");
+
+        condition.setUsername("xyz");
+        assertThat(memberJpaRepository.search(condition)).isEmpty();
+    }
+
+    @Test
+    public void searchSorted(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 20, teamA);
+        Member member4 = new Member("member4", 40, teamA);
+        memberJpaRepository.save(member4);
+        memberJpaRepository.save(member3);
+        memberJpaRepository.save(member2);
+        memberJpaRepository.save(member1);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        //나이 같은 member3, member2 는 정렬 방향(desc) 그대로 id 역순 (member2 가 나중에 저장됨)
+        List<MemberTeamDto> result = memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.desc("age"))));
+        assertThat(result).extracting("username").containsExactly("member4", "member2", "member3");
+
+        List<MemberTeamDto> ascending = memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.asc("age"), Sort.Order.asc("memberId"))));
+        assertThat(ascending).extracting("username").containsExactly("member1", "member3", "member2");
+
+        List<MemberTeamDto> page2 = memberJpaRepository.search(condition,
+            PageRequest.of(1, 3, Sort.by(Sort.Order.desc("age"))));
+        assertThat(page2).extracting("username").containsExactly("member1");
+
+        assertThatThrownBy(() -> memberJpaRepository.search(condition, PageRequest.of(0, 3, Sort.by("teamName"))))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberJpaRepository.search(condition, PageRequest.of(0, 3, Sort.by("password"))))
+            .isInstanceOf(IllegalArgumentException.class);
+        //(age, member_id) 인덱스로는 읽을 수 없는 정렬
+        assertThatThrownBy(() -> memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.desc("age"), Sort.Order.asc("username")))))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.desc("age"), Sort.Order.asc("memberId")))))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        //null 위치는 인덱스(H2 : null 이 가장 작음) 순서와 같을 때만
+        assertThat(memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.asc("username").nullsFirst()))))
+            .extracting("username").containsExactly("member1", "member2", "member3");
+        assertThatThrownBy(() -> memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.asc("username").nullsLast()))))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberJpaRepository.search(condition,
+            PageRequest.of(0, 3, Sort.by(Sort.Order.desc("username").nullsFirst()))))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        //페이지 없이 요청하면 전체 검색
+        assertThat(memberJpaRepository.search(condition, Pageable.unpaged())).hasSize(4);
+    }
+
+    @Test
+    public void searchByShape(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        memberJpaRepository.save(new Member("member1", 10, teamA));
+        memberJpaRepository.save(new Member("member2", 20, teamA));
+        memberJpaRepository.save(new Member("member3", 30));
+        //insert 가 측정에 섞이지 않도록 미리 flush
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+
+        //team join 없이 team_id 만 읽는다.
+        List<MemberTeamDto> members = new ArrayList<>();
+        QueryCount memberShape = queryCounter.count(() ->
+            members.addAll(memberJpaRepository.search(condition, MemberSearchShape.MEMBER)));
+        assertThat(memberShape.getSqls()).singleElement().asString().doesNotContainIgnoringCase(" join ");
+        assertThat(members).extracting("username").containsExactlyInAnyOrder("member1", "member2", "member3");
+        assertThat(members).extracting("teamName").containsOnlyNulls();
+        assertThat(members).filteredOn(m -> m.getUsername().equals("member1"))
+            .extracting("teamId").containsExactly(teamA.getId());
+        assertThat(members).filteredOn(m -> m.getUsername().equals("member3"))
+            .extracting("teamId").containsOnlyNulls();
+
+        List<MemberTeamDto> withTeam = new ArrayList<>();
+        QueryCount memberTeamShape = queryCounter.count(() ->
+            withTeam.addAll(memberJpaRepository.search(condition, MemberSearchShape.MEMBER_TEAM)));
+        assertThat(withTeam).extracting("teamName").containsExactlyInAnyOrder("teamA", "teamA", null);
+        assertThat(memberTeamShape.getSqls()).singleElement().asString().containsIgnoringCase(" left outer join ");
+
+        QueryCount countShape = queryCounter.count(() ->
+            assertThat(memberJpaRepository.searchCount(condition)).isEqualTo(3));
+        assertThat(countShape.getSqls()).singleElement().asString().doesNotContainIgnoringCase(" join ");
+
+        //teamName 조건이 있으면 MEMBER 모양도 team 을 join 해서 거른다.
+        condition.setTeamName("teamA");
+        QueryCount filteredByTeam = queryCounter.count(() ->
+            assertThat(memberJpaRepository.search(condition, MemberSearchShape.MEMBER))
+                .extracting("username").containsExactlyInAnyOrder("member1", "member2"));
+        assertThat(filteredByTeam.getSqls()).singleElement().asString().containsIgnoringCase(" inner join ");
+        assertThat(memberJpaRepository.search(condition, MemberSearchShape.MEMBER, PageRequest.of(0, 1, Sort.by("age"))))
+            .extracting("username").containsExactly("member1");
+        assertThat(memberJpaRepository.searchCount(condition)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,106 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+/*
+ * 스캐너는 구간마다 별도의 EntityManager 로 읽기 때문에
+ * 테스트 트랜잭션 안의 데이터는 보이지 않는다. 커밋하고 끝나면 지운다.
+ * */
+@SpringBootTest
+class MemberPartitionedScannerTest
+{
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberPartitionedScanner scanner;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void before(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (int i = 0; i < 50; i++) {
+                memberJpaRepository.save(new Member("scan" + i, i));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+            queryFactory.delete(member).where(member.username.startsWith("scan")).execute());
+    }
+
+    @Test
+    public void orderedScan(){
+        MemberScanOptions options = new MemberScanOptions();
+        options.setParallelism(3);
+        options.setChunkSize(7);
+
+        List<Member> result = new ArrayList<>();
+        scanner.scan(options, result::add);
+
+        List<Long> ids = result.stream().map(Member::getId).collect(Collectors.toList());
+        assertThat(ids).isSorted();
+        assertThat(result).extracting("username").contains("scan0", "scan49");
+        assertThat(result.stream().filter(m -> m.getUsername().startsWith("scan"))).hasSize(50);
+    }
+
+    @Test
+    public void unorderedStream(){
+        MemberScanOptions options = new MemberScanOptions();
+        options.setParallelism(4);
+        options.setChunkSize(5);
+        options.setOrdered(false);
+
+        try (Stream<Member> stream = scanner.stream(options)) {
+            long count = stream.filter(m -> m.getUsername() != null && m.getUsername().startsWith("scan")).count();
+            assertThat(count).isEqualTo(50);
+        }
+    }
+
+    @Test
+    public void rejectInvalidOptions(){
+        MemberScanOptions zeroChunk = new MemberScanOptions();
+        zeroChunk.setChunkSize(0);
+        assertThatThrownBy(() -> scanner.scan(zeroChunk, m -> {}))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        MemberScanOptions zeroParallelism = new MemberScanOptions();
+        zeroParallelism.setParallelism(0);
+        assertThatThrownBy(() -> scanner.stream(zeroParallelism))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void unorderedStreamIsNotReportedOrdered(){
+        MemberScanOptions options = new MemberScanOptions();
+        options.setOrdered(false);
+        try (Stream<Member> stream = scanner.stream(options)) {
+            assertThat(stream.spliterator().hasCharacteristics(Spliterator.ORDERED)).isFalse();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.entity.Member;
+import study.querydsl.ingest.MemberIngestionPipeline;
+
+//save 를 거치지 않은 변경도 contains 검색에 보여야 한다. 커밋된 변경만 이벤트로 오므로 테스트 트랜잭션을 쓰지 않는다.
+@SpringBootTest
+class MemberUsernameIndexTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberBulkJob memberBulkJob;
+
+    @Autowired
+    MemberIngestionPipeline pipeline;
+
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> memberJpaRepository.save(new Member("idxAlpha-1", 10)));
+    }
+
+    @AfterEach
+    public void after(){
+        memberBulkJob.reset("idxRename");
+        tx.executeWithoutResult(status ->
+            queryFactory.delete(member).where(member.username.startsWith("idx")).execute());
+    }
+
+    @Test
+    public void writesOutsideSave() throws InterruptedException
+    {
+        assertThat(contains("Alpha")).containsExactly("idxAlpha-1");
+
+        //StatelessSession 으로 insert
+        pipeline.ingest(new StringReader("idxAlpha-2,20,\n"));
+        assertThat(contains("Alpha")).containsExactlyInAnyOrder("idxAlpha-1", "idxAlpha-2");
+
+        //벌크 update 로 이름 변경 : 이벤트가 전달된 뒤에는 새 이름으로 검색된다.
+        memberBulkJob.updateInChunks("idxRename", member.username.eq("idxAlpha-1"),
+            update -> update.set(member.username, "idxBravo-1"), new BulkJobOptions());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (contains("Bravo").isEmpty()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        assertThat(contains("Bravo")).containsExactly("idxBravo-1");
+        assertThat(contains("Alpha")).containsExactly("idxAlpha-2");
+    }
+
+    @Test
+    public void rolledBackSaveIsNotFound(){
+        tx.executeWithoutResult(status -> {
+            memberJpaRepository.save(new Member("idxCharlie-1", 30));
+            //같은 트랜잭션에서는 보인다.
+            assertThat(contains("Charlie")).containsExactly("idxCharlie-1");
+            status.setRollbackOnly();
+        });
+        assertThat(contains("Charlie")).isEmpty();
+    }
+
+    //커밋된 insert 이벤트가 반영되면 loadedMaxId 가 올라가서 like 로 훑는 꼬리가 늘어나지 않는다.
+    @Test
+    public void insertAdvancesLoadedMaxId(){
+        pipeline.ingest(new StringReader("idxEcho-1,20,\n"));
+        Long echoId = idOf("idxEcho-1");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        MemberUsernameIndex.Candidates candidates = readyCandidates("Echo");
+        while (!candidates.getIds().contains(echoId)) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            sleep();
+            candidates = readyCandidates("Echo");
+        }
+        assertThat(candidates.getLoadedMaxId()).isGreaterThanOrEqualTo(echoId);
+    }
+
+    //인덱스는 자기 트랜잭션으로 읽으므로 검색하는 쪽의 커밋 전 변경은 들어가지 않는다.
+    @Test
+    public void uncommittedChangesStayOutOfIndex(){
+        Long alphaId = idOf("idxAlpha-1");
+        tx.executeWithoutResult(status -> {
+            em.find(Member.class, alphaId).setUsername("idxGolf-1");
+            memberJpaRepository.save(new Member("idxGolf-2", 30));
+            em.flush();
+
+            usernameIndex.rebuild();
+            assertThat(readyCandidates("Golf").getIds()).isEmpty();
+            assertThat(readyCandidates("Alpha").getIds()).contains(alphaId);
+            status.setRollbackOnly();
+        });
+        assertThat(readyCandidates("Alpha").getIds()).contains(alphaId);
+        assertThat(contains("Alpha")).containsExactly("idxAlpha-1");
+    }
+
+    //인덱스가 준비될 때까지 기다린다. (null 이면 like 로 검색하는 중)
+    private MemberUsernameIndex.Candidates readyCandidates(String fragment)
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        MemberUsernameIndex.Candidates candidates;
+        while ((candidates = usernameIndex.candidates(fragment)) == null) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            sleep();
+        }
+        return candidates;
+    }
+
+    private Long idOf(String username)
+    {
+        return tx.execute(status -> queryFactory
+            .select(member.id)
+            .from(member)
+            .where(member.username.eq(username))
+            .fetchOne());
+    }
+
+    private static void sleep()
+    {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<String> contains(String fragment)
+    {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(fragment);
+        condition.setUsernameMatch(UsernameMatch.CONTAINS);
+        return tx.execute(status -> memberJpaRepository.search(condition)).stream()
+            .map(MemberTeamDto::getUsername)
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,164 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.persistence.EntityManager;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.ChangeEvent;
+import study.querydsl.event.ChangeEventBus;
+import study.querydsl.support.QueryCounter;
+
+/*
+ * 요청마다 트랜잭션(영속성 컨텍스트)이 새로 열리는 상황을 TransactionTemplate 으로 흉내낸다.
+ * */
+@SpringBootTest(properties = "member.age-buffer.flush-interval-ms=100")
+@Import(QueryCounter.class)
+class MemberUsernameLookupTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberBulkJob memberBulkJob;
+
+    @Autowired
+    QueryCounter queryCounter;
+
+    @Autowired
+    MemberUsernameCache usernameCache;
+
+    @Autowired
+    MemberAgeIncrementBuffer ageBuffer;
+
+    @Autowired
+    ChangeEventBus changeEventBus;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> memberJpaRepository.save(new Member("lookupMember", 10)));
+    }
+
+    @AfterEach
+    public void after(){
+        memberBulkJob.reset("lookupRename");
+        tx.executeWithoutResult(status ->
+            queryFactory.delete(member).where(member.username.startsWith("lookup")).execute());
+    }
+
+    @Test
+    public void repeatedLookupNeedsNoSql(){
+        QueryCounter.QueryCount first = queryCounter.count(() ->
+            assertThat(lookup("lookupMember")).isPresent());
+        assertThat(first.getStatements()).isEqualTo(1);
+
+        QueryCounter.QueryCount second = queryCounter.count(() ->
+            assertThat(lookup("lookupMember")).isPresent());
+        assertThat(second.getStatements()).isEqualTo(0);
+    }
+
+    @Test
+    public void renameByBulkUpdate(){
+        assertThat(lookup("lookupMember")).isPresent();
+
+        BulkJobOptions options = new BulkJobOptions();
+        memberBulkJob.updateInChunks("lookupRename", member.username.eq("lookupMember"),
+            update -> update.set(member.username, "lookupRenamed"), options);
+
+        assertThat(lookup("lookupMember")).isEmpty();
+        assertThat(lookup("lookupRenamed")).map(Member::getAge).contains(10);
+    }
+
+    /*
+     * 나이 증가 버퍼가 돌고 있는 상태 : flush 의 벌크 update 로 2차 캐시는 비워지지만
+     * username 은 그대로라 near-cache 는 남아서 username 조회 대신 PK 조회 한번으로 끝난다.
+     * */
+    @Test
+    public void lookupWithAgeBufferFlush() throws InterruptedException
+    {
+        Member found = lookup("lookupMember").orElseThrow();
+        assertThat(usernameCache.get("lookupMember")).isEqualTo(found.getId());
+
+        List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        Runnable unsubscribe = changeEventBus.subscribe(events::addAll);
+        try {
+            ageBuffer.increment(found.getId());
+            //주기 flush 가 반영되고 이벤트가 전달될 때까지 기다린다.
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (events.stream().noneMatch(e -> e.getType() == ChangeEvent.Type.BULK_UPDATE && e.covers(found.getId()))) {
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                Thread.sleep(20);
+            }
+        } finally {
+            unsubscribe.run();
+        }
+        assertThat(usernameCache.get("lookupMember")).isEqualTo(found.getId());
+
+        QueryCounter.QueryCount afterFlush = queryCounter.count(() ->
+            assertThat(lookup("lookupMember")).map(Member::getAge).contains(11));
+        assertThat(afterFlush.getStatements()).isEqualTo(1);
+
+        QueryCounter.QueryCount next = queryCounter.count(() ->
+            assertThat(lookup("lookupMember")).isPresent());
+        assertThat(next.getStatements()).isEqualTo(0);
+    }
+
+    //트랜잭션 없이 호출해도 (영속성 컨텍스트 없이) 조회된다.
+    @Test
+    public void lookupWithoutTransaction(){
+        Member found = memberJpaRepository.findOneByUsername("lookupMember").orElseThrow();
+        assertThat(memberJpaRepository.findOneByUsername("lookupMember")).map(Member::getId).contains(found.getId());
+        assertThat(memberJpaRepository.findById(found.getId())).map(Member::getUsername).contains("lookupMember");
+    }
+
+    //캐시된 username 으로 중복 회원이 커밋되면 캐시에서 빠지고, 캐시 적중 없이도 같은 예외가 난다.
+    @Test
+    public void duplicateInsertEvictsCachedUsername() throws InterruptedException
+    {
+        assertThat(lookup("lookupMember")).isPresent();
+        assertThat(usernameCache.get("lookupMember")).isNotNull();
+
+        tx.executeWithoutResult(status -> memberJpaRepository.save(new Member("lookupMember", 20)));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (usernameCache.get("lookupMember") != null) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+
+        assertThatThrownBy(() -> lookup("lookupMember"))
+            .isInstanceOf(IncorrectResultSizeDataAccessException.class);
+        assertThat(usernameCache.get("lookupMember")).isNull();
+    }
+
+    private Optional<Member> lookup(String username)
+    {
+        return tx.execute(status -> memberJpaRepository.findOneByUsername(username));
+    }
+}
@@ -0,0 +1,87 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.repository.QueryAdmissionControl.QueryClass.SEARCH;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.entity.Member;
+
+@SpringBootTest(properties = {
+    "query.admission.search.max-concurrent=1",
+    "query.admission.search.queue-timeout-ms=0",
+    "query.admission.unfiltered-row-limit=2"
+})
+@Transactional
+class QueryAdmissionControlTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    QueryAdmissionControl admission;
+
+    Long member1Id;
+
+    @BeforeEach
+    public void before(){
+        Member member1 = new Member("member1", 10);
+        memberJpaRepository.save(member1);
+        memberJpaRepository.save(new Member("member2", 20));
+        memberJpaRepository.save(new Member("member3", 30));
+        member1Id = member1.getId();
+    }
+
+    @Test
+    public void rejectWhenSearchIsSaturated(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        //search permit 을 하나 잡고 있는 동안 다른 search 는 바로 거절, lookup 은 영향 없음
+        admission.execute(SEARCH, () -> {
+            assertThatThrownBy(() -> memberJpaRepository.search(condition))
+                .isInstanceOf(QueryRejectedException.class);
+            assertThat(memberJpaRepository.findById(member1Id)).isPresent();
+            return null;
+        });
+
+        assertThat(admission.available(SEARCH)).isEqualTo(1);
+        assertThat(memberJpaRepository.search(condition)).hasSize(2);
+    }
+
+    @Test
+    public void rejectUnfilteredSearchOverLimit(){
+        assertThatThrownBy(() -> memberJpaRepository.search(new MemberSearchCondition()))
+            .isInstanceOf(QueryRejectedException.class);
+        assertThatThrownBy(() -> memberJpaRepository.searchByBuilder(new MemberSearchCondition()))
+            .isInstanceOf(QueryRejectedException.class);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(100);
+        assertThat(memberJpaRepository.search(condition)).hasSizeGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    public void shortContainsIsUnfiltered(){
+        //trigram 보다 짧은 contains 는 like '%x%' 전체 스캔이므로 조건 없는 검색과 같다.
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("er");
+        condition.setUsernameMatch(UsernameMatch.CONTAINS);
+        assertThatThrownBy(() -> memberJpaRepository.search(condition))
+            .isInstanceOf(QueryRejectedException.class);
+
+        condition.setUsername("ber1");
+        assertThat(memberJpaRepository.search(condition)).extracting("username").contains("member1");
+    }
+}
@@ -0,0 +1,99 @@
+package study.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QBulkJobCheckpoint.bulkJobCheckpoint;
+import static study.querydsl.entity.QMember.member;
+
+import java.time.format.TextStyle;
+import java.util.List;
+import java.util.Locale;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.StringExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.BulkJobCheckpoint;
+import study.querydsl.entity.Member;
+
+//쿼리 플랜 캐시 적중 수를 보려고 통계를 켠다.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class SqlFunctionsTest
+{
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Test
+    public void functions(){
+        em.persist(new Member("member1", 10));
+        em.persist(new Member("Smith", 20));
+        em.persist(new Member("Smyth", 30));
+
+        List<String> replaced = queryFactory
+            .select(SqlFunctions.replace(member.username, "member", "M"))
+            .from(member)
+            .orderBy(member.id.asc())
+            .fetch();
+        assertThat(replaced).containsExactly("M1", "Smith", "Smyth");
+
+        List<String> soundsLike = queryFactory
+            .select(member.username)
+            .from(member)
+            .where(SqlFunctions.soundex(member.username).eq("S530"))
+            .orderBy(member.id.asc())
+            .fetch();
+        assertThat(soundsLike).containsExactly("Smith", "Smyth");
+    }
+
+    @Test
+    public void dateFunction(){
+        BulkJobCheckpoint checkpoint = new BulkJobCheckpoint("sqlFunctionsJob", "fingerprint");
+        em.persist(checkpoint);
+
+        String dayName = queryFactory
+            .select(SqlFunctions.dayName(bulkJobCheckpoint.updatedAt))
+            .from(bulkJobCheckpoint)
+            .where(bulkJobCheckpoint.jobName.eq("sqlFunctionsJob"))
+            .fetchOne();
+        assertThat(dayName).isEqualTo(checkpoint.getUpdatedAt().getDayOfWeek().getDisplayName(TextStyle.FULL, Locale.ENGLISH));
+    }
+
+    /*
+     * 미리 만든 템플릿과 원래 방식(매번 Expressions.stringTemplate 문자열)의 비교.
+     * 둘 다 같은 Template 인스턴스(TemplateFactory 캐시)와 같은 JPQL 을 쓰므로 파싱도 쿼리 플랜도 차이가 없다.
+     * */
+    @Test
+    public void sameCostAsInlineTemplate(){
+        assertThat(SqlFunctions.replace(member.username, "a", "b").getTemplate())
+            .isSameAs(Expressions.stringTemplate("function('replace',{0},{1},{2})", member.username, "a", "b").getTemplate());
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        fetchReplaced(SqlFunctions.replace(member.username, "registry", "M"));
+
+        long misses = statistics.getQueryPlanCacheMissCount();
+        fetchReplaced(Expressions.stringTemplate("function('replace',{0},{1},{2})", member.username, "inline", "M"));
+        //원래 방식도 인자가 바인딩되므로 SqlFunctions 로 만든 쿼리의 플랜을 그대로 쓴다.
+        assertThat(statistics.getQueryPlanCacheMissCount()).isEqualTo(misses);
+    }
+
+    private List<String> fetchReplaced(StringExpression replaced)
+    {
+        return queryFactory
+            .select(replaced)
+            .from(member)
+            .fetch();
+    }
+}
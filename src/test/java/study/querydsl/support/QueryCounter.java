@@ -0,0 +1,74 @@
+package study.querydsl.support;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.p6spy.engine.common.ResultSetInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.Getter;
+import lombok.ToString;
+
+/*
+ * p6spy 이벤트로 블록 안에서 실행된 SQL 수와 읽은 row 수를 센다. 실행된 SQL 문장도 모아둔다.
+ * 테스트 클래스에 @Import(QueryCounter.class) 로 등록하면
+ * p6spy-spring-boot-starter 가 JdbcEventListener 빈으로 인식해서 붙여준다.
+ *
+ * count() 를 호출한 스레드에서 실행된 SQL 만 센다. (스케줄러 등 다른 스레드 제외)
+ * */
+public class QueryCounter extends SimpleJdbcEventListener
+{
+    private volatile Thread owner;
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final List<String> sqls = new CopyOnWriteArrayList<>();
+
+    public QueryCount count(Runnable block){
+        statements.set(0);
+        rows.set(0);
+        sqls.clear();
+        owner = Thread.currentThread();
+        try {
+            block.run();
+        } finally {
+            owner = null;
+        }
+        return new QueryCount(statements.get(), rows.get(), new ArrayList<>(sqls));
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e)
+    {
+        if (owner == Thread.currentThread()) {
+            statements.incrementAndGet();
+            sqls.add(statementInformation.getSql());
+        }
+    }
+
+    @Override
+    public void onAfterResultSetNext(ResultSetInformation resultSetInformation, long timeElapsedNanos, boolean hasNext, SQLException e)
+    {
+        if (hasNext && owner == Thread.currentThread()) {
+            rows.incrementAndGet();
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class QueryCount
+    {
+        private final long statements;
+        private final long rows;
+        private final List<String> sqls;
+
+        public QueryCount(long statements, long rows, List<String> sqls)
+        {
+            this.statements = statements;
+            this.rows = rows;
+            this.sqls = sqls;
+        }
+    }
+}